@@ -1,16 +1,67 @@
 package is.pedals.backgroundyoutube;
 
+import android.app.ActivityManager;
 import android.app.Application;
 
+import com.devbrackets.android.exomedia.cache.MediaCache;
+import com.devbrackets.android.exomedia.event.EMEventDispatcher;
+import com.devbrackets.android.exomedia.util.ConnectivityMonitor;
+
+import java.io.File;
+
 public class App extends Application {
 
+    private static final String VIDEO_INFO_CACHE_FILE = "video_info_cache.json";
+    private static final String MEDIA_CACHE_DIR = "media";
+    private static final long MEDIA_CACHE_BYTES = 100 * 1024 * 1024;
+    private static final String DOWNLOAD_DIR = "downloads";
+    private static final int DOWNLOAD_CONNECTIONS = 2;
+    private static final long DOWNLOAD_MAX_BYTES = 300 * 1024 * 1024;
+    //the share of the app's memory the artwork may use
+    private static final int ARTWORK_MEMORY_DIVISOR = 16;
+
     private static App application;
     private static PlaylistManager playlistManager;
+    private static VideoInfoResolver videoInfoResolver;
+    private static PlaybackPipeline playbackPipeline;
+    private static MediaCache mediaCache;
+    private static DownloadManager downloadManager;
+    private static QueueRefresher queueRefresher;
+    private static ArtworkCache artworkCache;
+    private static EMEventDispatcher eventDispatcher;
 
     public static PlaylistManager getPlaylistManager() {
         return playlistManager;
     }
 
+    public static VideoInfoResolver getVideoInfoResolver() {
+        return videoInfoResolver;
+    }
+
+    public static PlaybackPipeline getPlaybackPipeline() {
+        return playbackPipeline;
+    }
+
+    public static MediaCache getMediaCache() {
+        return mediaCache;
+    }
+
+    public static DownloadManager getDownloadManager() {
+        return downloadManager;
+    }
+
+    public static QueueRefresher getQueueRefresher() {
+        return queueRefresher;
+    }
+
+    public static ArtworkCache getArtworkCache() {
+        return artworkCache;
+    }
+
+    public static EMEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
     public static App getApplication() {
         return application;
     }
@@ -20,6 +71,16 @@ public class App extends Application {
         super.onCreate();
         application = this;
         playlistManager = new PlaylistManager();
+        eventDispatcher = new EMEventDispatcher();
+        videoInfoResolver = new VideoInfoResolver(this, new VideoInfoCache(new File(getCacheDir(), VIDEO_INFO_CACHE_FILE)));
+        mediaCache = new MediaCache(new File(getCacheDir(), MEDIA_CACHE_DIR), MEDIA_CACHE_BYTES, new YoutubeCacheKeyFactory());
+        //downloads go in the files dir, unlike the caches the system doesn't clear it when space runs low
+        downloadManager = new DownloadManager(videoInfoResolver, new File(getFilesDir(), DOWNLOAD_DIR), DOWNLOAD_CONNECTIONS,
+                DOWNLOAD_MAX_BYTES, new ConnectivityMonitor(this));
+        queueRefresher = new QueueRefresher(videoInfoResolver, playlistManager, eventDispatcher);
+        playbackPipeline = new PlaybackPipeline(videoInfoResolver, playlistManager, downloadManager);
+        int memoryClassBytes = ((ActivityManager) getSystemService(ACTIVITY_SERVICE)).getMemoryClass() * 1024 * 1024;
+        artworkCache = new ArtworkCache(this, memoryClassBytes / ARTWORK_MEMORY_DIVISOR);
     }
 
     @Override
@@ -27,5 +88,12 @@ public class App extends Application {
         super.onTerminate();
         application = null;
         playlistManager = null;
+        videoInfoResolver = null;
+        playbackPipeline = null;
+        mediaCache = null;
+        downloadManager = null;
+        queueRefresher = null;
+        artworkCache = null;
+        eventDispatcher = null;
     }
 }
\ No newline at end of file
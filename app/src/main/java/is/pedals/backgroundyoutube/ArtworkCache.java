@@ -0,0 +1,146 @@
+package is.pedals.backgroundyoutube;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.bumptech.glide.BitmapRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Artwork for the notification and the lock screen, shared between the two.  Images are
+ * decoded at exactly the size they are shown at (square sizes are center cropped, others are
+ * fit) and kept in a memory LRU bounded by bytes, so changing to an item whose artwork was
+ * prefetched shows it right away.  Glide loads the images and keeps the downsampled results
+ * on disk, so an image is only fetched and decoded at full size once.
+ * <p/>
+ * Requests for an image that is already loading join the running load.  All methods must
+ * be called on the main thread.
+ */
+public class ArtworkCache {
+
+    public interface Callback {
+        void onArtworkLoaded(String url, Bitmap bitmap);
+    }
+
+    private static final String TAG = "ArtworkCache";
+
+    private final Context context;
+    private final LruCache<String, Bitmap> memoryCache;
+    //the callbacks waiting on each running load, a prefetch waits with an empty list
+    private final Map<String, List<Callback>> loading = new HashMap<>();
+
+    private int hitCount;
+    private int missCount;
+
+    public ArtworkCache(Context context, int maxBytes) {
+        this.context = context.getApplicationContext();
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @return the artwork if it is in memory, otherwise null
+     */
+    @Nullable
+    public Bitmap get(String url, int width, int height) {
+        Bitmap bitmap = memoryCache.get(getKey(url, width, height));
+        if (bitmap == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Loads the artwork, informing the callback once it is available.  Artwork that is
+     * already in memory is returned without calling the callback.
+     *
+     * @return the artwork if it is in memory, otherwise null
+     */
+    @Nullable
+    public Bitmap load(String url, int width, int height, Callback callback) {
+        Bitmap bitmap = get(url, width, height);
+        if (bitmap == null) {
+            startLoad(url, width, height, callback);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Loads the artwork in to memory ahead of it being needed
+     */
+    public void prefetch(String url, int width, int height) {
+        if (memoryCache.get(getKey(url, width, height)) == null) {
+            startLoad(url, width, height, null);
+        }
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    private void startLoad(final String url, int width, int height, @Nullable Callback callback) {
+        final String key = getKey(url, width, height);
+        List<Callback> callbacks = loading.get(key);
+        if (callbacks != null) {
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+            return;
+        }
+
+        callbacks = new ArrayList<>();
+        if (callback != null) {
+            callbacks.add(callback);
+        }
+        loading.put(key, callbacks);
+
+        //the memory cache above replaces glide's, so the bitmaps aren't held twice
+        BitmapRequestBuilder<String, Bitmap> request = Glide.with(context)
+                .load(url)
+                .asBitmap()
+                .skipMemoryCache(true)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT);
+        request = width == height ? request.centerCrop() : request.fitCenter();
+        request.into(new SimpleTarget<Bitmap>(width, height) {
+            @Override
+            public void onResourceReady(Bitmap bitmap, GlideAnimation<? super Bitmap> anim) {
+                memoryCache.put(key, bitmap);
+                for (Callback callback : loading.remove(key)) {
+                    callback.onArtworkLoaded(url, bitmap);
+                }
+            }
+
+            @Override
+            public void onLoadFailed(Exception e, Drawable errorDrawable) {
+                Log.w(TAG, "unable to load artwork " + url, e);
+                loading.remove(key);
+            }
+        });
+    }
+
+    private static String getKey(String url, int width, int height) {
+        return url + "|" + width + "x" + height;
+    }
+}
@@ -0,0 +1,142 @@
+package is.pedals.backgroundyoutube;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A text file that is replaced atomically: the new contents are written to a temporary file
+ * which is then renamed over the old one, so a crash never leaves a truncated file behind.
+ * <p/>
+ * Writes are scheduled rather than made by the caller.  Every {@link #scheduleWrite()} within
+ * the write delay is collapsed into a single write, made on a background thread shared by all
+ * files with whatever the {@link Serializer} returns at that point.  The caller's lock is then
+ * only held for as long as it takes to serialize, never while writing.
+ */
+public class AtomicTextFile {
+
+    public interface Serializer {
+        /**
+         * Called on the writer thread when a scheduled write is due
+         *
+         * @return the contents to write, or null to skip the write
+         */
+        String serialize();
+    }
+
+    private static final String TAG = "AtomicTextFile";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    //a single thread for every file, so two writes of the same file never overlap
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+
+    private final File file;
+    private final Serializer serializer;
+    private final long writeDelayMs;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+
+    private final Runnable writeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            //cleared first, so changes made while serializing schedule another write
+            writeScheduled.set(false);
+            String contents = serializer.serialize();
+            if (contents == null) {
+                return;
+            }
+
+            try {
+                write(contents);
+            } catch (IOException e) {
+                Log.e(TAG, "unable to write " + file, e);
+            }
+        }
+    };
+
+    public AtomicTextFile(File file, Serializer serializer, long writeDelayMs) {
+        this.file = file;
+        this.serializer = serializer;
+        this.writeDelayMs = writeDelayMs;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the contents of the file, or null if it doesn't exist
+     */
+    public String read() throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            return new String(data, 0, offset, "UTF-8");
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Schedules the file to be written after the write delay, unless a write is already scheduled
+     */
+    public void scheduleWrite() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            writer.schedule(writeRunnable, writeDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Replaces the contents of the file, called on the writer thread
+     */
+    private void write(String contents) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        FileOutputStream out = null;
+        boolean replaced = false;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(contents.getBytes("UTF-8"));
+            //the data has to be on disk before the rename is, or a crash can leave an empty file
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("unable to replace " + file);
+            }
+            replaced = true;
+        } finally {
+            closeQuietly(out);
+            if (!replaced && temp.exists() && !temp.delete()) {
+                Log.w(TAG, "unable to delete " + temp);
+            }
+        }
+    }
+
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            //nothing we can do
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package is.pedals.backgroundyoutube;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The disk backed record of the downloads, keyed by video id.  Every download is split into
+ * fixed size chunks that are fetched independently, and the index remembers the checksum of
+ * each chunk that has been written so an interrupted download resumes where it left off and
+ * the finished file can be verified against what was received.
+ * <p/>
+ * Changes are kept in memory and written to disk a little later on a background thread, so a
+ * download writing its chunks doesn't rewrite the index after every one of them, and the lock
+ * is never held while writing.  A chunk that is lost from the index because the process died
+ * before the write is simply fetched again.
+ */
+public class DownloadIndex {
+
+    private static final String TAG = "DownloadIndex";
+    private static final long MISSING = -1;
+    //collapses the writes of chunks that finish close together
+    private static final long WRITE_DELAY_MS = 2000;
+
+    private static final String KEY_ID = "id";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_CHUNK_SIZE = "chunkSize";
+    private static final String KEY_CHUNKS = "chunks";
+    private static final String KEY_COMPLETE = "complete";
+    private static final String KEY_LAST_USED = "lastUsed";
+
+    /**
+     * A single download.  The chunk state is only changed through the index, which persists it.
+     */
+    public static class Entry {
+        private final String videoId;
+        private final long length;
+        private final int chunkSize;
+        //the crc32 of every chunk that is on disk, MISSING for the others
+        private final long[] chunkCrcs;
+        private boolean complete;
+        //when the download was last started, resumed or played, for evicting the least recently used
+        private long lastUsedMs;
+
+        private Entry(String videoId, long length, int chunkSize) {
+            this.videoId = videoId;
+            this.length = length;
+            this.chunkSize = chunkSize;
+            chunkCrcs = new long[(int) ((length + chunkSize - 1) / chunkSize)];
+            Arrays.fill(chunkCrcs, MISSING);
+        }
+
+        public String getVideoId() {
+            return videoId;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public int getChunkCount() {
+            return chunkCrcs.length;
+        }
+
+        public long getChunkStart(int chunk) {
+            return (long) chunk * chunkSize;
+        }
+
+        public int getChunkLength(int chunk) {
+            return (int) Math.min(chunkSize, length - getChunkStart(chunk));
+        }
+
+        public synchronized boolean isChunkDone(int chunk) {
+            return chunkCrcs[chunk] != MISSING;
+        }
+
+        public synchronized long getChunkCrc(int chunk) {
+            return chunkCrcs[chunk];
+        }
+
+        /**
+         * @return true once every chunk has been written and the file has been verified
+         */
+        public synchronized boolean isComplete() {
+            return complete;
+        }
+
+        public synchronized long getLastUsedMs() {
+            return lastUsedMs;
+        }
+
+        private synchronized int getChunksDone() {
+            int done = 0;
+            for (long crc : chunkCrcs) {
+                if (crc != MISSING) {
+                    done++;
+                }
+            }
+            return done;
+        }
+    }
+
+    private final AtomicTextFile file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded = false;
+
+    public DownloadIndex(File file) {
+        this.file = new AtomicTextFile(file, new AtomicTextFile.Serializer() {
+            @Override
+            public String serialize() {
+                return DownloadIndex.this.serialize();
+            }
+        }, WRITE_DELAY_MS);
+    }
+
+    /**
+     * Reads the index from disk if that hasn't happened yet.  Every other method does this
+     * when needed, calling it ahead of time keeps the disk access off of the calling thread.
+     */
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        try {
+            String contents = file.read();
+            if (contents == null) {
+                return;
+            }
+            JSONArray array = new JSONArray(contents);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject object = array.getJSONObject(i);
+                Entry entry = new Entry(object.getString(KEY_ID), object.getLong(KEY_LENGTH), object.getInt(KEY_CHUNK_SIZE));
+                JSONArray chunks = object.getJSONArray(KEY_CHUNKS);
+                if (chunks.length() != entry.chunkCrcs.length) {
+                    Log.w(TAG, "dropping malformed entry for " + entry.videoId);
+                    continue;
+                }
+                for (int chunk = 0; chunk < chunks.length(); chunk++) {
+                    entry.chunkCrcs[chunk] = chunks.getLong(chunk);
+                }
+                entry.complete = object.optBoolean(KEY_COMPLETE, false);
+                entry.lastUsedMs = object.optLong(KEY_LAST_USED, 0);
+                entries.put(entry.videoId, entry);
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "unable to read index, starting empty", e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the download of the video, or null if it was never started
+     */
+    public synchronized Entry get(String videoId) {
+        load();
+        return entries.get(videoId);
+    }
+
+    /**
+     * Retrieves the download of the video so it can be continued.  An existing download is
+     * only continued if it is for a stream of the same length and its file still exists,
+     * otherwise it starts over.
+     *
+     * @param fileExists true if the file the download is written to still exists
+     */
+    public synchronized Entry start(String videoId, long length, int chunkSize, boolean fileExists) {
+        load();
+        Entry entry = entries.get(videoId);
+        if (entry != null && entry.length == length && entry.chunkSize == chunkSize && fileExists) {
+            Log.d(TAG, "resuming " + videoId + " with " + entry.getChunksDone() + "/" + entry.getChunkCount() + " chunks");
+            touch(entry);
+            return entry;
+        }
+
+        entry = new Entry(videoId, length, chunkSize);
+        entry.lastUsedMs = System.currentTimeMillis();
+        entries.put(videoId, entry);
+        file.scheduleWrite();
+        return entry;
+    }
+
+    /**
+     * Records that the chunk has been written to disk
+     *
+     * @param crc the crc32 of the data that was written
+     */
+    public synchronized void onChunkDone(Entry entry, int chunk, long crc) {
+        synchronized (entry) {
+            entry.chunkCrcs[chunk] = crc;
+        }
+        file.scheduleWrite();
+    }
+
+    /**
+     * Records that the chunk has to be fetched again
+     */
+    public synchronized void onChunkCorrupt(Entry entry, int chunk) {
+        synchronized (entry) {
+            entry.chunkCrcs[chunk] = MISSING;
+            entry.complete = false;
+        }
+        file.scheduleWrite();
+    }
+
+    /**
+     * Records that the download has been verified and can be played
+     */
+    public synchronized void onComplete(Entry entry) {
+        synchronized (entry) {
+            entry.complete = true;
+        }
+        file.scheduleWrite();
+    }
+
+    /**
+     * Records that the download was used, so it is evicted after the ones that weren't.  This
+     * doesn't read the index, so it never blocks on the disk; before the index has been read
+     * it does nothing.
+     */
+    public synchronized void touch(String videoId) {
+        Entry entry = loaded ? entries.get(videoId) : null;
+        if (entry != null) {
+            touch(entry);
+        }
+    }
+
+    private void touch(Entry entry) {
+        synchronized (entry) {
+            entry.lastUsedMs = System.currentTimeMillis();
+        }
+        file.scheduleWrite();
+    }
+
+    /**
+     * @return a copy of the downloads in the index
+     */
+    public synchronized List<Entry> getEntries() {
+        load();
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized void remove(String videoId) {
+        load();
+        if (entries.remove(videoId) != null) {
+            file.scheduleWrite();
+        }
+    }
+
+    private synchronized String serialize() {
+        JSONArray array = new JSONArray();
+        try {
+            for (Entry entry : entries.values()) {
+                JSONObject object = new JSONObject();
+                object.put(KEY_ID, entry.videoId);
+                object.put(KEY_LENGTH, entry.length);
+                object.put(KEY_CHUNK_SIZE, entry.chunkSize);
+                JSONArray chunks = new JSONArray();
+                synchronized (entry) {
+                    for (long crc : entry.chunkCrcs) {
+                        chunks.put(crc);
+                    }
+                    object.put(KEY_COMPLETE, entry.complete);
+                    object.put(KEY_LAST_USED, entry.lastUsedMs);
+                }
+                object.put(KEY_CHUNKS, chunks);
+                array.put(object);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "unable to serialize index", e);
+            return null;
+        }
+        return array.toString();
+    }
+}
@@ -0,0 +1,545 @@
+package is.pedals.backgroundyoutube;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.devbrackets.android.exomedia.util.ConnectivityMonitor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import okio.BufferedSource;
+
+/**
+ * Downloads the audio streams of videos so they can be played from local storage (see
+ * {@link MediaItem#getDownloadedMediaUri()}).  Downloads run one at a time, and each one is
+ * split into chunks that are fetched with http range requests spread over a number of
+ * parallel connections.
+ * <p/>
+ * What the server sends is checked as it arrives: every chunk has to come back as exactly the
+ * range that was asked for, of a stream whose total length (from Content-Range) is the clen
+ * the video was resolved with, so a stream that is truncated or isn't the one that was resolved
+ * is rejected.  The checksum of the bytes received for each chunk is recorded in the
+ * {@link DownloadIndex} once they have been written.  A download that is interrupted resumes
+ * with the missing chunks the next time it is enqueued.  A finished file is read back and
+ * compared against those checksums before it is playable; that is a write-back check, it only
+ * catches data that didn't make it to the disk intact.
+ * <p/>
+ * The downloads are kept within a byte budget: before a download starts, the least recently
+ * used downloads are evicted to make room for it, and partial downloads that haven't been
+ * touched for {@link #STALE_PARTIAL_MS} are deleted.  Nothing is downloaded while the network
+ * is metered (or unavailable), those downloads are deferred until an unmetered network is
+ * available.
+ */
+public class DownloadManager {
+
+    private static final String TAG = "DownloadManager";
+    private static final String INDEX_FILE = "index.json";
+    //the resolver only picks m4a audio streams, the extension lets the player pick the mp4 extractor
+    private static final String EXTENSION = ".m4a";
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+    //doubled after every failed attempt of a chunk
+    private static final long INITIAL_RETRY_DELAY_MS = 1000;
+    private static final long STALE_PARTIAL_MS = TimeUnit.DAYS.toMillis(3);
+
+    private final VideoInfoResolver resolver;
+    private final OkHttpClient client;
+    private final File directory;
+    private final long maxBytes;
+    private final ConnectivityMonitor connectivityMonitor;
+    private final DownloadIndex index;
+    //downloads are run one after the other, each spreading its chunks over the connections
+    private final ExecutorService downloadExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService connectionExecutor;
+    private final Set<String> queued = Collections.synchronizedSet(new HashSet<String>());
+    //downloads waiting for an unmetered network, in the order they were enqueued
+    private final Set<String> deferred = Collections.synchronizedSet(new LinkedHashSet<String>());
+    //the verified downloads whose file was intact when the index was read, so the main thread
+    //can check for a download without taking the index lock or touching the disk
+    private final Set<String> downloaded = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param resolver the resolver to find the audio streams with, its client is shared for the downloads
+     * @param directory the directory to store the downloads and the index in
+     * @param connectionCount the number of connections to fetch the chunks of a download with
+     * @param maxBytes the number of bytes the downloads, including partial ones, may take up
+     * @param connectivityMonitor the monitor to defer downloads on metered networks with, it is started by the manager
+     */
+    public DownloadManager(VideoInfoResolver resolver, final File directory, int connectionCount, long maxBytes,
+                           ConnectivityMonitor connectivityMonitor) {
+        this.resolver = resolver;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.connectivityMonitor = connectivityMonitor;
+        client = resolver.getClient();
+        index = new DownloadIndex(new File(directory, INDEX_FILE));
+        connectionExecutor = Executors.newFixedThreadPool(connectionCount);
+
+        connectivityMonitor.start(new ConnectivityMonitor.ConnectivityListener() {
+            @Override
+            public void onConnectivityChanged(boolean connected, boolean metered) {
+                if (isDownloadAllowed()) {
+                    resumeDeferred();
+                }
+            }
+        });
+
+        //read the index ahead of time so the first check from the main thread doesn't have to
+        downloadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    Log.e(TAG, "unable to create " + directory);
+                }
+                for (DownloadIndex.Entry entry : index.getEntries()) {
+                    if (entry.isComplete() && getFile(entry.getVideoId()).length() == entry.getLength()) {
+                        downloaded.add(entry.getVideoId());
+                    }
+                }
+                deleteOrphanedFiles();
+                trim(null, 0);
+            }
+        });
+    }
+
+    public DownloadIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Queues the audio stream of the video to be downloaded.  Videos that are already
+     * downloaded or queued are ignored, partial downloads are resumed.  While the network is
+     * metered the download is deferred until it isn't.
+     */
+    public void enqueue(final String videoId) {
+        if (!isDownloadAllowed()) {
+            if (!downloaded.contains(videoId) && deferred.add(videoId)) {
+                Log.d(TAG, "deferring the download of " + videoId + " until the network is unmetered");
+            }
+            return;
+        }
+
+        if (!queued.add(videoId)) {
+            return;
+        }
+        deferred.remove(videoId);
+
+        downloadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    download(videoId);
+                } catch (DeferredException e) {
+                    Log.d(TAG, "deferring the rest of " + videoId + " until the network is unmetered");
+                    deferred.add(videoId);
+                } catch (IOException e) {
+                    Log.e(TAG, "unable to download " + videoId, e);
+                } finally {
+                    queued.remove(videoId);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if downloads may use the current network
+     */
+    private boolean isDownloadAllowed() {
+        return connectivityMonitor.isConnected() && !connectivityMonitor.isMetered();
+    }
+
+    private void resumeDeferred() {
+        List<String> videoIds;
+        synchronized (deferred) {
+            videoIds = new ArrayList<>(deferred);
+            deferred.clear();
+        }
+
+        for (String videoId : videoIds) {
+            enqueue(videoId);
+        }
+    }
+
+    /**
+     * Checks for a download without blocking, so it can be called on the main thread.  Until the
+     * index has been read in the background this is false for every video.
+     *
+     * @return true if the video has been downloaded and verified, and its file is intact
+     */
+    public boolean isDownloaded(String videoId) {
+        return downloaded.contains(videoId);
+    }
+
+    /**
+     * Retrieves the file to play the video from.  This counts as a use of the download, so it
+     * is evicted after the ones that haven't been played since.
+     *
+     * @return the uri of the downloaded file, or null if the video hasn't been downloaded
+     */
+    public String getDownloadedUri(String videoId) {
+        if (!isDownloaded(videoId)) {
+            return null;
+        }
+        index.touch(videoId);
+        return Uri.fromFile(getFile(videoId)).toString();
+    }
+
+    /**
+     * Deletes the download of the video, after any download that is in progress
+     */
+    public void remove(final String videoId) {
+        deferred.remove(videoId);
+        downloadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                delete(videoId);
+            }
+        });
+    }
+
+    private void delete(String videoId) {
+        downloaded.remove(videoId);
+        index.remove(videoId);
+        File file = getFile(videoId);
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "unable to delete " + file);
+        }
+    }
+
+    /**
+     * Deletes partial downloads that haven't been touched in a while, then evicts the least
+     * recently used downloads until the reserved bytes fit in the budget.  Downloads that are
+     * queued are kept.  Must be called on the download executor.
+     *
+     * @param keepVideoId the download to keep regardless, or null
+     * @param reserveBytes the number of bytes to make room for
+     * @return true if the reserved bytes fit in the budget
+     */
+    private boolean trim(String keepVideoId, long reserveBytes) {
+        long now = System.currentTimeMillis();
+        long usedBytes = 0;
+        List<DownloadIndex.Entry> evictable = new ArrayList<>();
+        for (DownloadIndex.Entry entry : index.getEntries()) {
+            String videoId = entry.getVideoId();
+            boolean keep = videoId.equals(keepVideoId) || queued.contains(videoId);
+            if (!keep && !entry.isComplete() && now - entry.getLastUsedMs() > STALE_PARTIAL_MS) {
+                Log.d(TAG, "deleting the stale partial download of " + videoId);
+                delete(videoId);
+                continue;
+            }
+
+            usedBytes += entry.getLength();
+            if (!keep) {
+                evictable.add(entry);
+            }
+        }
+
+        Collections.sort(evictable, new Comparator<DownloadIndex.Entry>() {
+            @Override
+            public int compare(DownloadIndex.Entry lhs, DownloadIndex.Entry rhs) {
+                long lhsUsed = lhs.getLastUsedMs();
+                long rhsUsed = rhs.getLastUsedMs();
+                return lhsUsed < rhsUsed ? -1 : (lhsUsed == rhsUsed ? 0 : 1);
+            }
+        });
+
+        for (DownloadIndex.Entry entry : evictable) {
+            if (usedBytes + reserveBytes <= maxBytes) {
+                break;
+            }
+            Log.d(TAG, "evicting " + entry.getVideoId() + " to stay within " + maxBytes + " bytes");
+            delete(entry.getVideoId());
+            usedBytes -= entry.getLength();
+        }
+
+        return usedBytes + reserveBytes <= maxBytes;
+    }
+
+    /**
+     * Deletes the files in the download directory that the index doesn't know about, such as
+     * those whose entry was lost before the index was written
+     */
+    private void deleteOrphanedFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Set<String> known = new HashSet<>();
+        for (DownloadIndex.Entry entry : index.getEntries()) {
+            known.add(getFile(entry.getVideoId()).getName());
+        }
+
+        for (File file : files) {
+            if (file.getName().endsWith(EXTENSION) && !known.contains(file.getName()) && !file.delete()) {
+                Log.e(TAG, "unable to delete " + file);
+            }
+        }
+    }
+
+    private File getFile(String videoId) {
+        return new File(directory, videoId + EXTENSION);
+    }
+
+    private void download(String videoId) throws IOException {
+        if (isDownloaded(videoId)) {
+            return;
+        }
+
+        try {
+            download(resolve(videoId));
+        } catch (UrlRejectedException e) {
+            //the signed url has expired, so resolve a fresh one and carry on with the missing chunks
+            Log.d(TAG, "url of " + videoId + " was rejected, resolving it again");
+            if (resolver.getCache() != null) {
+                resolver.getCache().remove(videoId);
+            }
+            download(resolve(videoId));
+        }
+    }
+
+    private VideoInfo resolve(String videoId) throws IOException {
+        VideoInfo info = resolver.resolveBlocking(videoId, this, new VideoInfoResolver.Timings());
+        if (info == null || info.getAudioUrl() == null || info.getAudioLength() <= 0) {
+            throw new IOException("no downloadable audio stream for " + videoId);
+        }
+        return info;
+    }
+
+    private void download(VideoInfo info) throws IOException {
+        long startMs = System.currentTimeMillis();
+        File file = getFile(info.getVideoId());
+
+        //an entry that is already there counts against the budget with its full length
+        DownloadIndex.Entry existing = index.get(info.getVideoId());
+        long reserveBytes = existing != null && existing.getLength() == info.getAudioLength() ? 0 : info.getAudioLength();
+        if (!trim(info.getVideoId(), reserveBytes)) {
+            throw new IOException(info.getVideoId() + " doesn't fit in the " + maxBytes + " byte budget");
+        }
+
+        DownloadIndex.Entry entry = index.start(info.getVideoId(), info.getAudioLength(), CHUNK_SIZE, file.exists());
+
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(entry.getLength());
+        } finally {
+            AtomicTextFile.closeQuietly(out);
+        }
+
+        List<Future<Void>> chunks = new ArrayList<>();
+        for (int chunk = 0; chunk < entry.getChunkCount(); chunk++) {
+            if (!entry.isChunkDone(chunk)) {
+                chunks.add(connectionExecutor.submit(new ChunkTask(entry, file, info.getAudioUrl(), chunk)));
+            }
+        }
+
+        //wait for all of them, even after a failure, so every chunk that made it is kept for the resume
+        IOException failure = null;
+        for (Future<Void> chunk : chunks) {
+            try {
+                chunk.get();
+            } catch (ExecutionException e) {
+                if (failure == null || getFailurePriority(e.getCause()) > getFailurePriority(failure)) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while downloading " + info.getVideoId());
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        verifyWrites(entry, file);
+        index.onComplete(entry);
+        downloaded.add(info.getVideoId());
+        Log.d(TAG, "downloaded " + info.getVideoId() + ": " + entry.getLength() + " bytes in "
+                + chunks.size() + " chunks, " + (System.currentTimeMillis() - startMs) + "ms");
+    }
+
+    /**
+     * Decides which of the failed chunks fails the download.  A deferral wins, so the download
+     * is picked up again, then a rejected url, so it is resolved again, then everything else.
+     */
+    private static int getFailurePriority(Throwable failure) {
+        if (failure instanceof DeferredException) {
+            return 2;
+        }
+        return failure instanceof UrlRejectedException ? 1 : 0;
+    }
+
+    /**
+     * Reads the file back and compares every chunk against the checksum of the data that was
+     * received for it, to catch data that didn't make it to the disk intact.  This can't tell
+     * whether the server sent the right data, that is checked as the chunks arrive (see
+     * {@link ChunkTask#fetch()}).  Chunks that don't match are marked to be fetched again.
+     */
+    private void verifyWrites(DownloadIndex.Entry entry, File file) throws IOException {
+        int corrupt = 0;
+        byte[] buffer = new byte[CHUNK_SIZE];
+        CRC32 crc = new CRC32();
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            if (in.length() != entry.getLength()) {
+                throw new IOException("expected " + entry.getLength() + " bytes but the file has " + in.length());
+            }
+            for (int chunk = 0; chunk < entry.getChunkCount(); chunk++) {
+                int length = entry.getChunkLength(chunk);
+                in.readFully(buffer, 0, length);
+                crc.reset();
+                crc.update(buffer, 0, length);
+                if (crc.getValue() != entry.getChunkCrc(chunk)) {
+                    index.onChunkCorrupt(entry, chunk);
+                    corrupt++;
+                }
+            }
+        } finally {
+            AtomicTextFile.closeQuietly(in);
+        }
+
+        if (corrupt > 0) {
+            throw new IOException(corrupt + " chunks of " + entry.getVideoId() + " failed verification");
+        }
+    }
+
+    /**
+     * Fetches a single chunk, retrying with a growing delay on failures other than the url
+     * being rejected
+     */
+    private class ChunkTask implements Callable<Void> {
+        private final DownloadIndex.Entry entry;
+        private final File file;
+        private final String url;
+        private final int chunk;
+
+        ChunkTask(DownloadIndex.Entry entry, File file, String url, int chunk) {
+            this.entry = entry;
+            this.file = file;
+            this.url = url;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            IOException failure = null;
+            long retryDelayMs = INITIAL_RETRY_DELAY_MS;
+            for (int attempt = 0; attempt < MAX_CHUNK_ATTEMPTS; attempt++) {
+                if (attempt > 0) {
+                    try {
+                        Thread.sleep(retryDelayMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("interrupted while retrying chunk " + chunk + " of " + entry.getVideoId());
+                    }
+                    retryDelayMs *= 2;
+                }
+                if (!isDownloadAllowed()) {
+                    throw new DeferredException();
+                }
+                try {
+                    fetch();
+                    return null;
+                } catch (UrlRejectedException e) {
+                    throw e;
+                } catch (IOException e) {
+                    Log.w(TAG, "chunk " + chunk + " of " + entry.getVideoId() + " failed, attempt " + (attempt + 1), e);
+                    failure = e;
+                }
+            }
+            throw failure;
+        }
+
+        /**
+         * Fetches the chunk and checks that it is exactly the range that was asked for, of a
+         * stream with the length the video was resolved with
+         */
+        private void fetch() throws IOException {
+            long start = entry.getChunkStart(chunk);
+            int length = entry.getChunkLength(chunk);
+            long end = start + length - 1;
+            Request request = new Request.Builder()
+                    .url(url)
+                    .header("Range", "bytes=" + start + "-" + end)
+                    .tag(DownloadManager.this)
+                    .build();
+
+            byte[] data = new byte[length];
+            Response response = client.newCall(request).execute();
+            try {
+                if (response.code() == 403 || response.code() == 410) {
+                    throw new UrlRejectedException("http " + response.code() + " for " + entry.getVideoId());
+                }
+                if (response.code() != 206) {
+                    throw new IOException("expected a partial response but got http " + response.code());
+                }
+                //the total has to be the clen of the resolved stream, the entry was created with it
+                String expectedRange = "bytes " + start + "-" + end + "/" + entry.getLength();
+                if (!expectedRange.equals(response.header("Content-Range"))) {
+                    throw new IOException("expected " + expectedRange + " but got " + response.header("Content-Range"));
+                }
+
+                BufferedSource source = response.body().source();
+                source.readFully(data);
+                if (!source.exhausted()) {
+                    throw new IOException("chunk " + chunk + " is longer than " + length + " bytes");
+                }
+            } finally {
+                response.body().close();
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                out.seek(start);
+                out.write(data);
+                //the chunk has to be on disk before the index says it is
+                out.getFD().sync();
+            } finally {
+                AtomicTextFile.closeQuietly(out);
+            }
+            index.onChunkDone(entry, chunk, crc.getValue());
+        }
+    }
+
+    /**
+     * The network became metered or unavailable, the download continues once it isn't
+     */
+    private static class DeferredException extends IOException {
+        DeferredException() {
+            super("the network is metered or unavailable");
+        }
+    }
+
+    /**
+     * The server refused the signed url, most likely because it has expired
+     */
+    private static class UrlRejectedException extends IOException {
+        UrlRejectedException(String message) {
+            super(message);
+        }
+    }
+}
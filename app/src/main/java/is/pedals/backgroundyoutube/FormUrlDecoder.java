@@ -0,0 +1,127 @@
+package is.pedals.backgroundyoutube;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * A single pass application/x-www-form-urlencoded decoder that reads straight from a source.
+ * Only the keys that have been asked for with {@link #want(String, int)} are decoded, every
+ * other value is skipped without being copied, and reading stops as soon as all of the wanted
+ * keys have been found.
+ */
+public class FormUrlDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_KEY_LENGTH = 64;
+
+    private final Map<ByteString, Integer> wanted = new HashMap<>();
+
+    /**
+     * Adds a key to decode.
+     *
+     * @param key the key to look for
+     * @param rounds the number of times the value has been url encoded, e.g. 2 for dashmpd
+     */
+    public FormUrlDecoder want(String key, int rounds) {
+        wanted.put(ByteString.encodeUtf8(key), rounds);
+        return this;
+    }
+
+    /**
+     * Decodes the wanted keys from the source. The source is left positioned after the last
+     * wanted field, the caller is responsible for closing it.
+     *
+     * @return the decoded values by key, keys that were not present are absent from the map
+     */
+    public Map<String, String> decode(BufferedSource source) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        byte[] keyBuffer = new byte[MAX_KEY_LENGTH];
+        while (values.size() < wanted.size() && !source.exhausted()) {
+            //read the key
+            int keyLength = 0;
+            byte b = 0;
+            boolean overflow = false;
+            while (!source.exhausted()) {
+                b = source.readByte();
+                if (b == '=' || b == '&') {
+                    break;
+                }
+                if (keyLength < MAX_KEY_LENGTH) {
+                    keyBuffer[keyLength++] = b;
+                } else {
+                    overflow = true;
+                }
+            }
+            if (b != '=') {
+                //a key without a value
+                continue;
+            }
+
+            Integer rounds = overflow ? null : wanted.get(ByteString.of(keyBuffer, 0, keyLength));
+            long end = source.indexOf((byte) '&');
+            if (rounds == null) {
+                if (end == -1) {
+                    break;
+                }
+                source.skip(end + 1);
+                continue;
+            }
+
+            byte[] value = end == -1 ? source.readByteArray() : source.readByteArray(end);
+            if (end != -1) {
+                source.skip(1);
+            }
+            for (int i = 0; i < rounds; i++) {
+                value = percentDecode(value);
+            }
+            values.put(new String(keyBuffer, 0, keyLength, UTF_8), new String(value, UTF_8));
+        }
+        return values;
+    }
+
+    private static byte[] percentDecode(byte[] encoded) {
+        ByteArrayOutputStream out = null;
+        for (int i = 0; i < encoded.length; i++) {
+            byte b = encoded[i];
+            if (b != '%' && b != '+') {
+                if (out != null) {
+                    out.write(b);
+                }
+                continue;
+            }
+            if (out == null) {
+                //only copy once there is something to decode
+                out = new ByteArrayOutputStream(encoded.length);
+                out.write(encoded, 0, i);
+            }
+            if (b == '+') {
+                out.write(' ');
+            } else if (i + 2 < encoded.length && hexValue(encoded[i + 1]) != -1 && hexValue(encoded[i + 2]) != -1) {
+                out.write((hexValue(encoded[i + 1]) << 4) | hexValue(encoded[i + 2]));
+                i += 2;
+            } else {
+                out.write(b);
+            }
+        }
+        return out == null ? encoded : out.toByteArray();
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -4,16 +4,34 @@ import com.devbrackets.android.exomedia.manager.EMPlaylistManager;
 
 public class MediaItem implements EMPlaylistManager.PlaylistItem {
 
-    private final String url;
     private final String title;
     private final String thumbnail;
     private final String id;
+    //the signed url expires, so it is replaced ahead of time by the QueueRefresher
+    private String url;
+    private long expiresAtMs;
 
-    public MediaItem(String url, String title, String thumbnail, String id) {
+    public MediaItem(String url, String title, String thumbnail, String id, long expiresAtMs) {
         this.url = url;
         this.title = title;
         this.thumbnail = thumbnail;
         this.id = id;
+        this.expiresAtMs = expiresAtMs;
+    }
+
+    /**
+     * Replaces the stream url with the one from a fresh resolve.  Must be called on the main thread.
+     */
+    public void updateStream(VideoInfo info) {
+        url = info.getUrl();
+        expiresAtMs = info.getExpiresAtMs();
+    }
+
+    /**
+     * @return the wall clock time in milliseconds at which the url stops working, or {@link VideoInfo#NO_EXPIRY}
+     */
+    public long getExpiresAtMs() {
+        return expiresAtMs;
     }
 
     @Override
@@ -43,7 +61,8 @@ public class MediaItem implements EMPlaylistManager.PlaylistItem {
 
     @Override
     public String getDownloadedMediaUri() {
-        return null;
+        DownloadManager downloadManager = App.getDownloadManager();
+        return downloadManager == null ? null : downloadManager.getDownloadedUri(id);
     }
 
     @Override
@@ -1,14 +1,19 @@
 package is.pedals.backgroundyoutube;
 
+import android.app.ActivityManager;
 import android.app.PendingIntent;
 import android.content.Intent;
 import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.animation.GlideAnimation;
-import com.bumptech.glide.request.target.SimpleTarget;
+import com.devbrackets.android.exomedia.BufferPolicy;
+import com.devbrackets.android.exomedia.cache.MediaCache;
+import com.devbrackets.android.exomedia.event.EMEventDispatcher;
 import com.devbrackets.android.exomedia.service.EMPlaylistService;
 
 //copied from exomediademo/service/AudioService.java
@@ -19,8 +24,14 @@ public class MediaPlayerService extends EMPlaylistService<MediaItem, PlaylistMan
     private static final int NOTIFICATION_ID = 1564; //Arbitrary
     private static final int FOREGROUND_REQUEST_CODE = 332; //Arbitrary
     private static final float AUDIO_DUCK_VOLUME = 0.1f;
+    //youtube's hq thumbnails are 480x360, anything larger would only be scaled up
+    private static final int LOCK_SCREEN_ARTWORK_WIDTH = 480;
+    private static final int LOCK_SCREEN_ARTWORK_HEIGHT = 360;
+    private static final int ARTWORK_PREFETCH_COUNT = 2;
 
     private Bitmap largeNotificationImage;
+    private Bitmap lockScreenArtwork;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     @Override
     protected String getAppName() {
@@ -37,6 +48,79 @@ public class MediaPlayerService extends EMPlaylistService<MediaItem, PlaylistMan
         return AUDIO_DUCK_VOLUME;
     }
 
+    @Override
+    protected EMEventDispatcher getEventDispatcher() {
+        return App.getEventDispatcher();
+    }
+
+    @Override
+    protected BufferPolicy getBufferPolicy() {
+        //low ram devices get small buffers, everything else loads in bursts so the radio can sleep in between
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+            if (activityManager.isLowRamDevice()) {
+                return BufferPolicy.LOW_MEMORY;
+            }
+        }
+        //shorter bursts on mobile data, so less is wasted when an item is skipped
+        return isNetworkMetered() ? BufferPolicy.DATA_SAVER : BufferPolicy.BATTERY_SAVER;
+    }
+
+    @Override
+    protected MediaCache getMediaCache() {
+        return App.getMediaCache();
+    }
+
+    @Override
+    protected String getMediaContentId(MediaItem item) {
+        return item.getVideoId();
+    }
+
+    @Override
+    protected boolean isDownloaded(MediaItem playlistItem) {
+        DownloadManager downloadManager = App.getDownloadManager();
+        return downloadManager != null && downloadManager.isDownloaded(playlistItem.getVideoId());
+    }
+
+    @Override
+    protected boolean refreshMediaUrl(final MediaItem playlistItem) {
+        App.getVideoInfoResolver().refresh(playlistItem.getVideoId(), this, new VideoInfoResolver.Callback() {
+            @Override
+            public void onResolved(final VideoInfo info, VideoInfoResolver.Timings timings) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        playlistItem.updateStream(info);
+                        onMediaUrlRefreshed(playlistItem, true);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String videoId, Exception e) {
+                Log.e(TAG, "unable to refresh the url of " + videoId, e);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onMediaUrlRefreshed(playlistItem, false);
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    @Override
+    protected void onConnectivityChanged(boolean connected, boolean metered) {
+        App.getQueueRefresher().setNetworkAvailable(connected);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        App.getVideoInfoResolver().cancel(this);
+    }
+
     @Override
     protected PlaylistManager getMediaPlaylistManager() {
         return App.getPlaylistManager();
@@ -68,16 +152,71 @@ public class MediaPlayerService extends EMPlaylistService<MediaItem, PlaylistMan
 
     @Override
     protected void updateLargeNotificationImage(int size, MediaItem playlistItem) {
-        Glide.with(getApplicationContext())
-                .load(playlistItem.getThumbnailUrl())
-                .asBitmap()
-                .into(new SimpleTarget<Bitmap>(size, size) {
-                    @Override
-                    public void onResourceReady(Bitmap bitmap, GlideAnimation anim) {
-                        largeNotificationImage = bitmap;
-                        onLargeNotificationImageUpdated();
-                    }
-                });
+        String url = playlistItem.getThumbnailUrl();
+        if (TextUtils.isEmpty(url)) {
+            return;
+        }
+
+        Bitmap bitmap = App.getArtworkCache().load(url, size, size, new ArtworkCache.Callback() {
+            @Override
+            public void onArtworkLoaded(String url, Bitmap bitmap) {
+                //the item may have changed while loading
+                if (isCurrentThumbnail(url)) {
+                    largeNotificationImage = bitmap;
+                    onLargeNotificationImageUpdated();
+                }
+            }
+        });
+        if (bitmap != null) {
+            largeNotificationImage = bitmap;
+            onLargeNotificationImageUpdated();
+        }
+    }
+
+    @Nullable
+    @Override
+    protected Bitmap getLockScreenArtwork() {
+        return lockScreenArtwork;
+    }
+
+    @Override
+    protected void updateLockScreenArtwork(MediaItem playlistItem) {
+        String url = playlistItem.getThumbnailUrl();
+        if (TextUtils.isEmpty(url)) {
+            return;
+        }
+
+        Bitmap bitmap = App.getArtworkCache().load(url, LOCK_SCREEN_ARTWORK_WIDTH, LOCK_SCREEN_ARTWORK_HEIGHT, new ArtworkCache.Callback() {
+            @Override
+            public void onArtworkLoaded(String url, Bitmap bitmap) {
+                if (isCurrentThumbnail(url)) {
+                    lockScreenArtwork = bitmap;
+                    onLockScreenArtworkUpdated();
+                }
+            }
+        });
+        if (bitmap != null) {
+            lockScreenArtwork = bitmap;
+            onLockScreenArtworkUpdated();
+        }
+    }
+
+    private boolean isCurrentThumbnail(String url) {
+        return currentPlaylistItem != null && url.equals(currentPlaylistItem.getThumbnailUrl());
+    }
+
+    /**
+     * Loads the artwork of the next few items, so it can be shown as soon as they start
+     */
+    private void prefetchArtwork(int notificationSize) {
+        ArtworkCache artworkCache = App.getArtworkCache();
+        for (MediaItem item : getMediaPlaylistManager().getUpcomingItems(ARTWORK_PREFETCH_COUNT)) {
+            String url = item.getThumbnailUrl();
+            if (!TextUtils.isEmpty(url)) {
+                artworkCache.prefetch(url, notificationSize, notificationSize);
+                artworkCache.prefetch(url, LOCK_SCREEN_ARTWORK_WIDTH, LOCK_SCREEN_ARTWORK_HEIGHT);
+            }
+        }
     }
 
     @Override
@@ -108,8 +247,8 @@ public class MediaPlayerService extends EMPlaylistService<MediaItem, PlaylistMan
         but for the first played item currentItem == currentPlaylistItem, which means the
         image isn't update
         */
+        int size = getResources().getDimensionPixelSize(com.devbrackets.android.exomedia.R.dimen.exomedia_big_notification_height);
         if (currentPlaylistItem != null) {
-            int size = getResources().getDimensionPixelSize(com.devbrackets.android.exomedia.R.dimen.exomedia_big_notification_height);
             updateLargeNotificationImage(size, currentPlaylistItem);
         }
 
@@ -124,6 +263,7 @@ public class MediaPlayerService extends EMPlaylistService<MediaItem, PlaylistMan
             updateLockScreenArtwork(currentPlaylistItem);
         }
 
+        prefetchArtwork(size);
         postPlaylistItemChanged();
     }
 }
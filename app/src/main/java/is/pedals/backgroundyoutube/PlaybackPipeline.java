@@ -0,0 +1,64 @@
+package is.pedals.backgroundyoutube;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
+
+/**
+ * Turns shared text into playback (see {@link PlaybackRequest} for the stages).  Only the most
+ * recent share is played: submitting a new one supersedes the one in progress, which cancels its
+ * outstanding resolves so two shares never race to start the service.
+ * <p/>
+ * All methods must be called on the main thread.
+ */
+public class PlaybackPipeline {
+
+    private final VideoInfoResolver resolver;
+    private final PlaylistManager playlistManager;
+    private final DownloadManager downloadManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private PlaybackRequest current;
+
+    /**
+     * @param downloadManager the manager to download the queued videos with, or null to always stream them
+     */
+    public PlaybackPipeline(VideoInfoResolver resolver, PlaylistManager playlistManager, DownloadManager downloadManager) {
+        this.resolver = resolver;
+        this.playlistManager = playlistManager;
+        this.downloadManager = downloadManager;
+    }
+
+    /**
+     * Starts playing the videos in the shared text, superseding any share that is still in progress.
+     *
+     * @return the request, or null if the text did not contain any videos
+     */
+    public PlaybackRequest submit(String sharedText) {
+        //the trace is only begun for text with videos, so other shares don't abandon the one in progress
+        long startNanoTime = System.nanoTime();
+        PlaybackRequest request = new PlaybackRequest(sharedText, resolver, playlistManager, downloadManager, mainHandler);
+        if (!request.extract()) {
+            return null;
+        }
+        PlaybackTracer.Trace trace = PlaybackTracer.begin(request.getVideoIds().toString(), startNanoTime);
+        PlaybackTracer.mark(trace, PlaybackTracer.Phase.EXTRACT);
+
+        //cancel first so the superseded share frees up the resolver workers
+        cancel();
+        current = request;
+        request.resolve(trace);
+        return request;
+    }
+
+    /**
+     * Cancels the share in progress, if any
+     */
+    public void cancel() {
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+    }
+}
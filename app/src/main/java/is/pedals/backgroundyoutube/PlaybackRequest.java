@@ -0,0 +1,222 @@
+package is.pedals.backgroundyoutube;
+
+import android.os.Handler;
+import android.util.Log;
+
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * A single share making its way through the {@link PlaybackPipeline}.  The stages are:
+ * <ol>
+ * <li>{@link Stage#EXTRACT}: find the video ids in the shared text (caller thread)</li>
+ * <li>{@link Stage#RESOLVE}: resolve every id in parallel on the resolver's bounded workers</li>
+ * <li>{@link Stage#ENQUEUE}: hand each result to the main thread and append it to the playlist in share order,
+ * queueing its download so it plays from local storage by the time it is reached</li>
+ * <li>{@link Stage#START_SERVICE}: start the service with the first item, on the main thread</li>
+ * </ol>
+ * A request that has been {@link #cancel() cancelled} aborts its in flight http calls and never
+ * touches the playlist again.
+ * <p/>
+ * The request holds the trace of the share until it hands it to the service with the first item.
+ * If it ends before then (it is cancelled, superseded or none of the videos resolve) the trace
+ * is abandoned.
+ */
+public class PlaybackRequest {
+
+    private static final String TAG = "PlaybackRequest";
+
+    public enum Stage {
+        EXTRACT,
+        RESOLVE,
+        ENQUEUE,
+        START_SERVICE,
+        DONE,
+        CANCELLED
+    }
+
+    private final String sharedText;
+    private final VideoInfoResolver resolver;
+    private final PlaylistManager playlistManager;
+    private final DownloadManager downloadManager;
+    private final Handler mainHandler;
+
+    private List<String> videoIds;
+    private VideoInfo[] resolved;
+    private VideoInfoResolver.Timings[] timings;
+    private boolean[] done;
+    private final List<Future<VideoInfo>> pending = new ArrayList<>();
+    private PlaybackTracer.Trace trace;
+
+    //only touched on the main thread
+    private int nextToEnqueue = 0;
+    private boolean serviceStarted = false;
+    private volatile Stage stage = Stage.EXTRACT;
+
+    PlaybackRequest(String sharedText, VideoInfoResolver resolver, PlaylistManager playlistManager, DownloadManager downloadManager,
+                    Handler mainHandler) {
+        this.sharedText = sharedText;
+        this.resolver = resolver;
+        this.playlistManager = playlistManager;
+        this.downloadManager = downloadManager;
+        this.mainHandler = mainHandler;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public List<String> getVideoIds() {
+        return videoIds;
+    }
+
+    public boolean isCancelled() {
+        return stage == Stage.CANCELLED;
+    }
+
+    /**
+     * Runs the extract stage.  Must be called on the main thread.
+     *
+     * @return false if the text contained no videos
+     */
+    boolean extract() {
+        videoIds = VideoIdExtractor.extract(sharedText);
+        if (videoIds.isEmpty()) {
+            stage = Stage.DONE;
+            return false;
+        }
+
+        resolved = new VideoInfo[videoIds.size()];
+        timings = new VideoInfoResolver.Timings[videoIds.size()];
+        done = new boolean[videoIds.size()];
+        return true;
+    }
+
+    /**
+     * Starts the resolve stage.  Must be called on the main thread after {@link #extract()}.
+     *
+     * @param trace the trace of the share, marked until the service is started with the first item
+     */
+    void resolve(PlaybackTracer.Trace trace) {
+        this.trace = trace;
+        stage = Stage.RESOLVE;
+        for (int i = 0; i < videoIds.size(); i++) {
+            //only the first video starts playing right away, the rest are not worth a manifest load yet
+            pending.add(resolver.resolve(videoIds.get(i), this, i == 0, new ResolveCallback(i)));
+        }
+    }
+
+    /**
+     * Stops the request.  Queued resolves are dropped, in flight http calls are aborted and
+     * results that are already on their way to the main thread are discarded.  Must be called
+     * on the main thread.
+     */
+    void cancel() {
+        if (stage == Stage.DONE || stage == Stage.CANCELLED) {
+            return;
+        }
+
+        stage = Stage.CANCELLED;
+        for (Future<VideoInfo> future : pending) {
+            future.cancel(false);
+        }
+        resolver.cancel(this);
+        abandonTrace();
+    }
+
+    private void onResolveDone(final int index, final VideoInfo info, final VideoInfoResolver.Timings resolveTimings) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isCancelled()) {
+                    return;
+                }
+                resolved[index] = info;
+                timings[index] = resolveTimings;
+                done[index] = true;
+                enqueueReady();
+            }
+        });
+    }
+
+    private void enqueueReady() {
+        stage = Stage.ENQUEUE;
+        while (nextToEnqueue < done.length && done[nextToEnqueue]) {
+            VideoInfo info = resolved[nextToEnqueue];
+            VideoInfoResolver.Timings resolveTimings = timings[nextToEnqueue];
+            resolved[nextToEnqueue] = null;
+            timings[nextToEnqueue] = null;
+            nextToEnqueue++;
+            if (info == null) {
+                continue;
+            }
+
+            if (!serviceStarted) {
+                startService(info, resolveTimings);
+            } else {
+                playlistManager.addItem(info.toMediaItem());
+                //the first item is already streaming, the rest download while it plays (on unmetered networks)
+                if (downloadManager != null) {
+                    downloadManager.enqueue(info.getVideoId());
+                }
+            }
+        }
+
+        stage = nextToEnqueue == done.length ? Stage.DONE : Stage.RESOLVE;
+        if (stage == Stage.DONE) {
+            //every video failed to resolve, so playback was never started
+            abandonTrace();
+        }
+    }
+
+    /**
+     * Abandons the trace unless it was already handed to the service
+     */
+    private void abandonTrace() {
+        if (!serviceStarted) {
+            PlaybackTracer.abandon(trace);
+        }
+        trace = null;
+    }
+
+    private void startService(VideoInfo info, VideoInfoResolver.Timings resolveTimings) {
+        stage = Stage.START_SERVICE;
+        serviceStarted = true;
+
+        //the trace follows the item that actually starts playback
+        if (resolveTimings.getHeadersNanoTime() != 0) {
+            PlaybackTracer.mark(trace, PlaybackTracer.Phase.RESOLVE_HEADERS, resolveTimings.getHeadersNanoTime());
+        }
+        PlaybackTracer.mark(trace, PlaybackTracer.Phase.RESOLVE_PARSE, resolveTimings.getParsedNanoTime());
+
+        List<MediaItem> items = new ArrayList<>();
+        items.add(info.toMediaItem());
+        playlistManager.setMediaServiceClass(MediaPlayerService.class);
+        playlistManager.play(items, 0, 0, false, trace);
+        trace = null;
+    }
+
+    private class ResolveCallback implements VideoInfoResolver.Callback {
+        private final int index;
+
+        ResolveCallback(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onResolved(VideoInfo info, VideoInfoResolver.Timings timings) {
+            onResolveDone(index, info, timings);
+        }
+
+        @Override
+        public void onError(String videoId, Exception e) {
+            if (!isCancelled()) {
+                Log.e(TAG, "unable to resolve " + videoId, e);
+            }
+            onResolveDone(index, null, null);
+        }
+    }
+}
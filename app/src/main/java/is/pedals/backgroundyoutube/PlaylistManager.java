@@ -16,4 +16,4 @@ public class PlaylistManager extends EMPlaylistManager<MediaItem> {
     protected Class<? extends Service> getMediaServiceClass() {
         return MediaPlayerService.class;
     }
-}
\ No newline at end of file
+}
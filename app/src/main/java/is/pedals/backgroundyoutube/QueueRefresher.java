@@ -0,0 +1,208 @@
+package is.pedals.backgroundyoutube;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.devbrackets.android.exomedia.event.EMEventDispatcher;
+import com.devbrackets.android.exomedia.event.EMMediaStateEvent;
+import com.devbrackets.android.exomedia.event.EMPlaylistItemChangedEvent;
+import com.devbrackets.android.exomedia.service.EMPlaylistService;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the signed urls of the next few items in the playlist fresh, so the service never
+ * reaches an item whose url has expired and never has to wait on a resolve when it moves to
+ * the next item.  Items whose url expires within {@link #REFRESH_MARGIN_MS} are resolved again
+ * in the background, a few at a time so they don't hold up the resolves of a new share.
+ * <p/>
+ * The queue is checked whenever the current item changes and periodically while playing, the
+ * refresher follows the playback through the service's events on the {@link EMEventDispatcher}.
+ * The periodic checks are suspended while the playback is paused, and the queue is checked
+ * again as soon as it resumes.  Nothing is refreshed while the network is unavailable either,
+ * the queue is checked again as soon as it returns.  All methods must be called on the main thread.
+ */
+public class QueueRefresher {
+
+    private static final String TAG = "QueueRefresher";
+    private static final int LOOK_AHEAD = 3;
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final long REFRESH_MARGIN_MS = TimeUnit.MINUTES.toMillis(20);
+    private static final long CHECK_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final VideoInfoResolver resolver;
+    private final PlaylistManager playlistManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    //the refreshes that are queued or running, by video id
+    private final Map<String, Future<VideoInfo>> inFlight = new HashMap<>();
+    //items that failed to refresh are left alone until the next periodic check
+    private final Set<String> failed = new HashSet<>();
+    private boolean running = false;
+    private boolean paused = false;
+    private boolean networkAvailable = true;
+
+    private final Runnable periodicCheck = new Runnable() {
+        @Override
+        public void run() {
+            failed.clear();
+            refresh();
+        }
+    };
+
+    public QueueRefresher(VideoInfoResolver resolver, PlaylistManager playlistManager, EMEventDispatcher eventDispatcher) {
+        this.resolver = resolver;
+        this.playlistManager = playlistManager;
+
+        eventDispatcher.subscribe(EMPlaylistItemChangedEvent.class, new EMEventDispatcher.Subscriber<EMPlaylistItemChangedEvent>() {
+            @Override
+            public void onEvent(EMPlaylistItemChangedEvent event) {
+                //the upcoming items shift with every change, so make sure they will still play when reached
+                start();
+            }
+        });
+        eventDispatcher.subscribe(EMMediaStateEvent.class, new EMEventDispatcher.Subscriber<EMMediaStateEvent>() {
+            @Override
+            public void onEvent(EMMediaStateEvent event) {
+                EMPlaylistService.MediaState state = event.getMediaState();
+                if (state == EMPlaylistService.MediaState.STOPPED) {
+                    stop();
+                } else if (state == EMPlaylistService.MediaState.PAUSED) {
+                    setPaused(true);
+                } else if (state == EMPlaylistService.MediaState.PLAYING || state == EMPlaylistService.MediaState.PREPARING) {
+                    setPaused(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts keeping the upcoming items fresh, checking them right away
+     */
+    public void start() {
+        if (!running) {
+            running = true;
+            failed.clear();
+        }
+        refresh();
+    }
+
+    /**
+     * Stops the periodic checks, drops the queued refreshes and aborts the ones in flight
+     */
+    public void stop() {
+        running = false;
+        mainHandler.removeCallbacks(periodicCheck);
+        for (Future<VideoInfo> future : inFlight.values()) {
+            future.cancel(false);
+        }
+        resolver.cancel(this);
+        inFlight.clear();
+    }
+
+    /**
+     * Suspends the periodic checks while the playback is paused, the refreshes that were
+     * already started are left to finish.  The queue is checked right away once it resumes.
+     */
+    public void setPaused(boolean paused) {
+        if (this.paused == paused) {
+            return;
+        }
+
+        this.paused = paused;
+        if (paused) {
+            mainHandler.removeCallbacks(periodicCheck);
+        } else {
+            refresh();
+        }
+    }
+
+    /**
+     * Informs the refresher of connectivity changes.  The refreshes that failed while
+     * offline are tried again once the network returns.
+     */
+    public void setNetworkAvailable(boolean available) {
+        if (networkAvailable == available) {
+            return;
+        }
+
+        networkAvailable = available;
+        if (available) {
+            failed.clear();
+        }
+        refresh();
+    }
+
+    /**
+     * Refreshes the upcoming items that are about to expire, as far as the concurrency limit allows
+     */
+    public void refresh() {
+        mainHandler.removeCallbacks(periodicCheck);
+        if (!running || paused || !networkAvailable) {
+            return;
+        }
+
+        long deadline = System.currentTimeMillis() + REFRESH_MARGIN_MS;
+        for (MediaItem item : playlistManager.getUpcomingItems(LOOK_AHEAD)) {
+            if (inFlight.size() >= MAX_IN_FLIGHT) {
+                break;
+            }
+
+            String videoId = item.getVideoId();
+            if (item.getExpiresAtMs() > deadline || inFlight.containsKey(videoId) || failed.contains(videoId)) {
+                continue;
+            }
+
+            inFlight.put(videoId, resolver.refresh(videoId, this, new RefreshCallback(item)));
+        }
+
+        mainHandler.postDelayed(periodicCheck, CHECK_INTERVAL_MS);
+    }
+
+    private void onRefreshDone(final MediaItem item, final VideoInfo info) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (inFlight.remove(item.getVideoId()) == null) {
+                    //stopped in the mean time
+                    return;
+                }
+
+                if (info != null) {
+                    item.updateStream(info);
+                }
+                //don't go straight back to an item that still isn't fresh
+                if (info == null || !info.isValidFor(REFRESH_MARGIN_MS)) {
+                    failed.add(item.getVideoId());
+                }
+                refresh();
+            }
+        });
+    }
+
+    private class RefreshCallback implements VideoInfoResolver.Callback {
+        private final MediaItem item;
+
+        RefreshCallback(MediaItem item) {
+            this.item = item;
+        }
+
+        @Override
+        public void onResolved(VideoInfo info, VideoInfoResolver.Timings timings) {
+            Log.d(TAG, "refreshed " + item.getVideoId() + ": " + timings);
+            onRefreshDone(item, info);
+        }
+
+        @Override
+        public void onError(String videoId, Exception e) {
+            Log.e(TAG, "unable to refresh " + videoId, e);
+            onRefreshDone(item, null);
+        }
+    }
+}
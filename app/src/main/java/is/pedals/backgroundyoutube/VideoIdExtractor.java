@@ -0,0 +1,45 @@
+package is.pedals.backgroundyoutube;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//finds the youtube video ids in shared text
+public class VideoIdExtractor {
+
+    //watch?v=, youtu.be/, embed/, shorts/ and v/ links, with any other query parameters around the id
+    private static final Pattern LINK_PATTERN = Pattern.compile(
+            "(?:youtube(?:-nocookie)?\\.com/(?:watch\\?(?:[^\\s#]*?&)?v=|embed/|shorts/|v/)|youtu\\.be/)([a-zA-Z0-9_-]{11})(?![a-zA-Z0-9_-])");
+    //a bare id at the end of the text, which is what the youtube app used to share
+    private static final Pattern TRAILING_ID_PATTERN = Pattern.compile("([a-zA-Z0-9_-]{11})$");
+
+    private VideoIdExtractor() {
+    }
+
+    /**
+     * Scans the text once and returns the ids of every youtube link in it, in the order
+     * they appear and without duplicates.
+     */
+    public static List<String> extract(CharSequence text) {
+        Set<String> ids = new LinkedHashSet<>();
+        if (text == null) {
+            return new ArrayList<>(ids);
+        }
+
+        Matcher matcher = LINK_PATTERN.matcher(text);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+
+        if (ids.isEmpty()) {
+            matcher = TRAILING_ID_PATTERN.matcher(text);
+            if (matcher.find()) {
+                ids.add(matcher.group(1));
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+}
@@ -0,0 +1,103 @@
+package is.pedals.backgroundyoutube;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//the playable information resolved from get_video_info for a single video
+public class VideoInfo {
+
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+    public static final long UNKNOWN_LENGTH = -1;
+
+    //signed urls carry their expiry either as a path segment (/expire/123/) or a query parameter (expire=123)
+    private static final Pattern EXPIRE_PATTERN = Pattern.compile("[/?&]expire[/=](\\d+)");
+
+    private final String videoId;
+    private final String url;
+    private final String title;
+    private final String thumbnail;
+    private final String audioUrl;
+    private final long audioLength;
+    private final long expiresAtMs;
+
+    public VideoInfo(String videoId, String url, String title, String thumbnail) {
+        this(videoId, url, title, thumbnail, null, UNKNOWN_LENGTH);
+    }
+
+    /**
+     * @param audioUrl the direct url of the audio only stream, or null if there is none
+     * @param audioLength the length in bytes of the audio only stream, or {@link #UNKNOWN_LENGTH}
+     */
+    public VideoInfo(String videoId, String url, String title, String thumbnail, String audioUrl, long audioLength) {
+        this.videoId = videoId;
+        this.url = url;
+        this.title = title;
+        this.thumbnail = thumbnail;
+        this.audioUrl = audioUrl;
+        this.audioLength = audioLength;
+        this.expiresAtMs = parseExpiry(url);
+    }
+
+    public String getVideoId() {
+        return videoId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getThumbnail() {
+        return thumbnail;
+    }
+
+    /**
+     * @return the direct url of the m4a audio stream, which can be downloaded with range
+     * requests, or null if the video does not have one
+     */
+    public String getAudioUrl() {
+        return audioUrl;
+    }
+
+    /**
+     * @return the length in bytes of the stream at {@link #getAudioUrl()}, or {@link #UNKNOWN_LENGTH}
+     */
+    public long getAudioLength() {
+        return audioLength;
+    }
+
+    /**
+     * @return the wall clock time in milliseconds at which the signed url stops working, or
+     * {@link #NO_EXPIRY} if the url does not say
+     */
+    public long getExpiresAtMs() {
+        return expiresAtMs;
+    }
+
+    public boolean isValidFor(long durationMs) {
+        return expiresAtMs == NO_EXPIRY || System.currentTimeMillis() + durationMs < expiresAtMs;
+    }
+
+    public MediaItem toMediaItem() {
+        return new MediaItem(url, title, thumbnail, videoId, expiresAtMs);
+    }
+
+    private static long parseExpiry(String url) {
+        if (url == null) {
+            return NO_EXPIRY;
+        }
+        Matcher matcher = EXPIRE_PATTERN.matcher(url);
+        if (!matcher.find()) {
+            return NO_EXPIRY;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(matcher.group(1)));
+        } catch (NumberFormatException e) {
+            return NO_EXPIRY;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package is.pedals.backgroundyoutube;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A disk backed LRU cache of resolved videos keyed by video id.  Entries are only kept for as
+ * long as the signed stream url they hold is valid (see {@link VideoInfo#getExpiresAtMs()}),
+ * so a hit can be played without going back to get_video_info.
+ * <p/>
+ * Changes are written to disk shortly after they are made, on a background thread, so adding
+ * an entry doesn't hold up the resolve that found it.
+ */
+public class VideoInfoCache {
+
+    private static final String TAG = "VideoInfoCache";
+    private static final int MAX_ENTRIES = 50;
+    //resolves of a share finish close together, this collapses their writes
+    private static final long WRITE_DELAY_MS = 1000;
+    //an entry has to stay valid for at least this long for it to be worth starting playback with
+    private static final long MIN_REMAINING_VALIDITY_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String KEY_ID = "id";
+    private static final String KEY_URL = "url";
+    private static final String KEY_TITLE = "title";
+    private static final String KEY_THUMBNAIL = "thumbnail";
+    private static final String KEY_AUDIO_URL = "audioUrl";
+    private static final String KEY_AUDIO_LENGTH = "audioLength";
+
+    private final AtomicTextFile file;
+    private final LinkedHashMap<String, VideoInfo> entries = new LinkedHashMap<String, VideoInfo>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VideoInfo> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private boolean loaded = false;
+
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    public VideoInfoCache(File file) {
+        this.file = new AtomicTextFile(file, new AtomicTextFile.Serializer() {
+            @Override
+            public String serialize() {
+                return VideoInfoCache.this.serialize();
+            }
+        }, WRITE_DELAY_MS);
+    }
+
+    /**
+     * Retrieves the cached information for the video if it is still valid.  The first call
+     * reads the cache from disk, so this should not be called on the main thread.
+     *
+     * @return the cached information or null
+     */
+    public synchronized VideoInfo get(String videoId) {
+        ensureLoaded();
+        VideoInfo info = entries.get(videoId);
+        if (info != null && !info.isValidFor(MIN_REMAINING_VALIDITY_MS)) {
+            entries.remove(videoId);
+            info = null;
+        }
+
+        if (info == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return info;
+    }
+
+    /**
+     * Adds the information to the cache and schedules the cache to be written to disk.
+     * Information without a known expiry is not cached.
+     */
+    public synchronized void put(VideoInfo info) {
+        if (info.getExpiresAtMs() == VideoInfo.NO_EXPIRY || !info.isValidFor(MIN_REMAINING_VALIDITY_MS)) {
+            return;
+        }
+        ensureLoaded();
+        entries.put(info.getVideoId(), info);
+        file.scheduleWrite();
+    }
+
+    public synchronized void remove(String videoId) {
+        ensureLoaded();
+        if (entries.remove(videoId) != null) {
+            file.scheduleWrite();
+        }
+    }
+
+    public int getHitCount() {
+        return hitCount.get();
+    }
+
+    public int getMissCount() {
+        return missCount.get();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        try {
+            String contents = file.read();
+            if (contents == null) {
+                return;
+            }
+            JSONArray array = new JSONArray(contents);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject object = array.getJSONObject(i);
+                VideoInfo info = new VideoInfo(object.getString(KEY_ID), object.getString(KEY_URL),
+                        object.optString(KEY_TITLE, null), object.optString(KEY_THUMBNAIL, null),
+                        object.optString(KEY_AUDIO_URL, null), object.optLong(KEY_AUDIO_LENGTH, VideoInfo.UNKNOWN_LENGTH));
+                if (info.isValidFor(MIN_REMAINING_VALIDITY_MS)) {
+                    entries.put(info.getVideoId(), info);
+                }
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "unable to read cache, starting empty", e);
+            entries.clear();
+        }
+    }
+
+    private synchronized String serialize() {
+        JSONArray array = new JSONArray();
+        try {
+            Iterator<VideoInfo> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                VideoInfo info = iterator.next();
+                if (!info.isValidFor(MIN_REMAINING_VALIDITY_MS)) {
+                    iterator.remove();
+                    continue;
+                }
+                JSONObject object = new JSONObject();
+                object.put(KEY_ID, info.getVideoId());
+                object.put(KEY_URL, info.getUrl());
+                object.put(KEY_TITLE, info.getTitle());
+                object.put(KEY_THUMBNAIL, info.getThumbnail());
+                object.put(KEY_AUDIO_URL, info.getAudioUrl());
+                object.put(KEY_AUDIO_LENGTH, info.getAudioLength());
+                array.put(object);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "unable to serialize cache", e);
+            return null;
+        }
+        return array.toString();
+    }
+}
@@ -0,0 +1,384 @@
+package is.pedals.backgroundyoutube;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.devbrackets.android.exomedia.builder.DashManifestPrefetcher;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dns;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+
+/**
+ * Resolves youtube video ids into playable stream information.  A single instance is shared
+ * by the whole app (see {@link App#getVideoInfoResolver()}) so that back to back requests
+ * reuse the pooled keep-alive connection, the cached DNS lookup and the TLS session instead
+ * of paying for a new handshake every time something is shared.
+ */
+public class VideoInfoResolver {
+
+    private static final String TAG = "VideoInfoResolver";
+    private static final String VIDEO_INFO_URL = "https://www.youtube.com/get_video_info?video_id=";
+
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_DURATION_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long TIMEOUT_SECONDS = 15;
+    private static final int WORKER_COUNT = 3;
+    private static final String MANIFEST_USER_AGENT = "BackgroundYoutube";
+
+    //dashmpd is double encoded, so it is decoded twice
+    private static final FormUrlDecoder VIDEO_INFO_DECODER = new FormUrlDecoder()
+            .want("dashmpd", 2)
+            .want("title", 1)
+            .want("iurlhq", 1)
+            .want("adaptive_fmts", 1);
+
+    //adaptive_fmts is a comma separated list of formats, each of which is form encoded itself
+    private static final FormUrlDecoder ADAPTIVE_FORMAT_DECODER = new FormUrlDecoder()
+            .want("itag", 1)
+            .want("url", 1)
+            .want("clen", 1)
+            .want("s", 1);
+    //the m4a audio only formats, best first.  These play with the mp4 extractor once downloaded
+    private static final String[] AUDIO_ITAGS = {"140", "139"};
+
+    public interface Callback {
+        /**
+         * Called on a resolver worker thread once the video has been resolved
+         */
+        void onResolved(VideoInfo info, Timings timings);
+
+        /**
+         * Called on a resolver worker thread if the video could not be resolved
+         */
+        void onError(String videoId, Exception e);
+    }
+
+    /**
+     * The time spent in each phase of a single resolve, in milliseconds.  A request that
+     * reused a pooled connection will report (close to) zero for the dns and connect phases.
+     */
+    public static class Timings {
+        private long startNs;
+        private long dnsNs;
+        private long connectedNs;
+        private long headersNs;
+        private long bodyNs;
+        private boolean cached;
+
+        /**
+         * @return true if the video was served from the {@link VideoInfoCache} without any network access
+         */
+        public boolean isCached() {
+            return cached;
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} the response headers arrived at, or 0 if they never did
+         */
+        long getHeadersNanoTime() {
+            return headersNs;
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} the response was parsed at, or 0 if it never was
+         */
+        long getParsedNanoTime() {
+            return bodyNs;
+        }
+
+        public long getDnsMs() {
+            return TimeUnit.NANOSECONDS.toMillis(dnsNs);
+        }
+
+        public long getConnectMs() {
+            if (connectedNs == 0) {
+                return 0;
+            }
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(connectedNs - startNs - dnsNs));
+        }
+
+        public long getTimeToFirstByteMs() {
+            if (connectedNs == 0 || headersNs == 0) {
+                return 0;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(headersNs - connectedNs);
+        }
+
+        public long getBodyMs() {
+            if (headersNs == 0 || bodyNs == 0) {
+                return 0;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(bodyNs - headersNs);
+        }
+
+        public long getTotalMs() {
+            if (bodyNs == 0) {
+                return 0;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(bodyNs - startNs);
+        }
+
+        @Override
+        public String toString() {
+            if (cached) {
+                return "cached";
+            }
+            return "dns=" + getDnsMs() + "ms connect=" + getConnectMs() + "ms ttfb=" + getTimeToFirstByteMs()
+                    + "ms body=" + getBodyMs() + "ms total=" + getTotalMs() + "ms";
+        }
+    }
+
+    //OkHttp runs the dns lookup and the interceptors on the thread executing the call,
+    //so the timings of the request in flight can be tracked per worker thread
+    private final ThreadLocal<Timings> currentTimings = new ThreadLocal<>();
+
+    private final Context context;
+    private final OkHttpClient client;
+    private final ExecutorService executor;
+    private final VideoInfoCache cache;
+
+    /**
+     * @param cache the cache to serve still valid videos from, or null to always hit the network
+     */
+    public VideoInfoResolver(Context context, VideoInfoCache cache) {
+        this.context = context.getApplicationContext();
+        this.cache = cache;
+        client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS));
+        client.setConnectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        client.setReadTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        client.setDns(new TimedDns());
+        client.networkInterceptors().add(new TimingInterceptor());
+        executor = Executors.newFixedThreadPool(WORKER_COUNT);
+    }
+
+    /**
+     * The client used for talking to youtube.  Anything else that needs to hit the network
+     * should use this so it shares the same connection pool.
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    public VideoInfoCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Asynchronously resolves the video.  The callback, if any, is informed on a resolver
+     * worker thread.
+     *
+     * @return a future that completes with the resolved information or null if the video
+     * has no playable stream
+     */
+    public Future<VideoInfo> resolve(String videoId, Callback callback) {
+        return resolve(videoId, null, callback);
+    }
+
+    /**
+     * Asynchronously resolves the video, tagging the http call so it can be aborted
+     * with {@link #cancel(Object)}.
+     */
+    public Future<VideoInfo> resolve(String videoId, Object tag, Callback callback) {
+        return resolve(videoId, tag, false, callback);
+    }
+
+    /**
+     * Asynchronously resolves the video.  If prefetchManifest is set the dash manifest starts
+     * loading as soon as its url is known, so it is (nearly) ready by the time the player asks
+     * for it.  Only set it for videos that are about to be played.
+     */
+    public Future<VideoInfo> resolve(String videoId, Object tag, boolean prefetchManifest, Callback callback) {
+        return submit(videoId, tag, prefetchManifest, true, callback);
+    }
+
+    /**
+     * Asynchronously resolves the video again without looking at the cache, so that a signed
+     * url that is about to expire can be replaced.  The fresh information replaces the cached one.
+     */
+    public Future<VideoInfo> refresh(String videoId, Object tag, Callback callback) {
+        return submit(videoId, tag, false, false, callback);
+    }
+
+    private Future<VideoInfo> submit(final String videoId, final Object tag, final boolean prefetchManifest,
+                                     final boolean useCache, final Callback callback) {
+        return executor.submit(new Callable<VideoInfo>() {
+            @Override
+            public VideoInfo call() throws Exception {
+                Timings timings = new Timings();
+                try {
+                    VideoInfo info = resolveBlocking(videoId, tag, timings, prefetchManifest, useCache);
+                    if (callback != null) {
+                        if (info == null) {
+                            callback.onError(videoId, new IOException("no stream available for " + videoId));
+                        } else {
+                            callback.onResolved(info, timings);
+                        }
+                    }
+                    return info;
+                } catch (Exception e) {
+                    Log.e(TAG, "http", e);
+                    if (callback != null) {
+                        callback.onError(videoId, e);
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Aborts the in flight http calls that were started with the tag.  Their callbacks will
+     * be informed of the cancellation through {@link Callback#onError(String, Exception)}.
+     */
+    public void cancel(Object tag) {
+        client.cancel(tag);
+    }
+
+    /**
+     * Resolves the video on the calling thread
+     *
+     * @param tag the tag for the http call (see {@link #cancel(Object)}), or null
+     * @return the resolved information or null if the video has no playable stream
+     */
+    public VideoInfo resolveBlocking(String videoId, Object tag, Timings timings) throws IOException {
+        return resolveBlocking(videoId, tag, timings, false, true);
+    }
+
+    private VideoInfo resolveBlocking(String videoId, Object tag, Timings timings, boolean prefetchManifest, boolean useCache)
+            throws IOException {
+        timings.startNs = System.nanoTime();
+        if (cache != null && useCache) {
+            VideoInfo info = cache.get(videoId);
+            if (info != null) {
+                if (prefetchManifest) {
+                    DashManifestPrefetcher.prefetch(context, MANIFEST_USER_AGENT, info.getUrl());
+                }
+                timings.cached = true;
+                timings.bodyNs = System.nanoTime();
+                return info;
+            }
+        }
+
+        currentTimings.set(timings);
+        try {
+            Request request = new Request.Builder()
+                    .url(VIDEO_INFO_URL + videoId)
+                    .tag(tag)
+                    .build();
+            Response response = client.newCall(request).execute();
+            Map<String, String> data;
+            try {
+                data = VIDEO_INFO_DECODER.decode(response.body().source());
+            } finally {
+                response.body().close();
+            }
+            timings.bodyNs = System.nanoTime();
+
+            String url = data.get("dashmpd");
+            if (url == null) {
+                return null;
+            }
+            if (prefetchManifest) {
+                DashManifestPrefetcher.prefetch(context, MANIFEST_USER_AGENT, url);
+            }
+            Log.d(TAG, "resolved " + videoId + ": " + timings);
+            Map<String, String> audio = findAudioFormat(data.get("adaptive_fmts"));
+            VideoInfo info = new VideoInfo(videoId, url, data.get("title"), data.get("iurlhq"),
+                    audio == null ? null : audio.get("url"), audio == null ? VideoInfo.UNKNOWN_LENGTH : parseLength(audio.get("clen")));
+            if (cache != null) {
+                cache.put(info);
+            }
+            return info;
+        } finally {
+            currentTimings.remove();
+        }
+    }
+
+    /**
+     * Finds the best audio only format that can be fetched directly
+     *
+     * @return the decoded fields of the format, or null if there is none
+     */
+    private static Map<String, String> findAudioFormat(String adaptiveFormats) throws IOException {
+        if (adaptiveFormats == null) {
+            return null;
+        }
+
+        Map<String, Map<String, String>> byItag = new HashMap<>();
+        for (String format : adaptiveFormats.split(",")) {
+            Map<String, String> fields = ADAPTIVE_FORMAT_DECODER.decode(new Buffer().writeUtf8(format));
+            //formats with an enciphered signature ("s") can't be fetched without deciphering it first
+            if (fields.get("url") != null && fields.get("itag") != null && !fields.containsKey("s")) {
+                byItag.put(fields.get("itag"), fields);
+            }
+        }
+
+        for (String itag : AUDIO_ITAGS) {
+            Map<String, String> fields = byItag.get(itag);
+            if (fields != null) {
+                return fields;
+            }
+        }
+        return null;
+    }
+
+    private static long parseLength(String length) {
+        if (length == null) {
+            return VideoInfo.UNKNOWN_LENGTH;
+        }
+        try {
+            return Long.parseLong(length);
+        } catch (NumberFormatException e) {
+            return VideoInfo.UNKNOWN_LENGTH;
+        }
+    }
+
+    private class TimedDns implements Dns {
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            long start = System.nanoTime();
+            try {
+                return Dns.SYSTEM.lookup(hostname);
+            } finally {
+                Timings timings = currentTimings.get();
+                if (timings != null) {
+                    timings.dnsNs += System.nanoTime() - start;
+                }
+            }
+        }
+    }
+
+    private class TimingInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            //network interceptors are only reached once a connection has been established
+            Timings timings = currentTimings.get();
+            if (timings != null && timings.connectedNs == 0) {
+                timings.connectedNs = System.nanoTime();
+            }
+            Response response = chain.proceed(chain.request());
+            if (timings != null) {
+                timings.headersNs = System.nanoTime();
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package is.pedals.backgroundyoutube;
+
+import com.devbrackets.android.exomedia.cache.MediaCache;
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keys cached media by video id, format (itag) and segment range instead of the signed
+ * googlevideo url, which changes every time a video is resolved.
+ */
+public class YoutubeCacheKeyFactory implements MediaCache.CacheKeyFactory {
+
+    //googlevideo urls carry these either as path segments (/itag/140/) or query parameters (itag=140)
+    private static final Pattern ITAG_PATTERN = Pattern.compile("[/?&]itag[/=](\\d+)");
+    private static final Pattern RANGE_PATTERN = Pattern.compile("[/?&]range[/=](\\d+-\\d+)");
+
+    @Override
+    public String getCacheKey(String videoId, DataSpec dataSpec) {
+        if (videoId == null) {
+            return null;
+        }
+
+        String url = dataSpec.uri.toString();
+        Matcher itag = ITAG_PATTERN.matcher(url);
+        if (!itag.find()) {
+            return null;
+        }
+
+        String key = videoId + "." + itag.group(1);
+        Matcher range = RANGE_PATTERN.matcher(url);
+        if (range.find()) {
+            key += "." + range.group(1);
+        }
+        return key;
+    }
+}
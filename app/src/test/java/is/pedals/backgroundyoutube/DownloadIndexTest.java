@@ -0,0 +1,168 @@
+package is.pedals.backgroundyoutube;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the chunk bookkeeping of the {@link DownloadIndex} and reading it back from disk
+ */
+public class DownloadIndexTest {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("downloads", ".json");
+        //the index starts empty when there is no file
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        //a write scheduled by the test may have created it already
+        file.delete();
+    }
+
+    @Test
+    public void chunksCoverTheLength() {
+        DownloadIndex.Entry entry = new DownloadIndex(file).start("abc", 10 * CHUNK_SIZE + 5, CHUNK_SIZE, false);
+
+        assertEquals(11, entry.getChunkCount());
+        assertEquals(0, entry.getChunkStart(0));
+        assertEquals(CHUNK_SIZE, entry.getChunkLength(0));
+        assertEquals(10 * CHUNK_SIZE, entry.getChunkStart(10));
+        assertEquals(5, entry.getChunkLength(10));
+
+        for (int chunk = 0; chunk < entry.getChunkCount(); chunk++) {
+            assertFalse(entry.isChunkDone(chunk));
+        }
+        assertFalse(entry.isComplete());
+    }
+
+    @Test
+    public void evenLengthsHaveNoPartialChunk() {
+        DownloadIndex.Entry entry = new DownloadIndex(file).start("abc", 4 * CHUNK_SIZE, CHUNK_SIZE, false);
+
+        assertEquals(4, entry.getChunkCount());
+        assertEquals(CHUNK_SIZE, entry.getChunkLength(3));
+    }
+
+    @Test
+    public void recordsDoneAndCorruptChunks() {
+        DownloadIndex index = new DownloadIndex(file);
+        DownloadIndex.Entry entry = index.start("abc", 3 * CHUNK_SIZE, CHUNK_SIZE, false);
+
+        index.onChunkDone(entry, 1, 0xCAFEL);
+        assertTrue(entry.isChunkDone(1));
+        assertEquals(0xCAFEL, entry.getChunkCrc(1));
+        assertFalse(entry.isChunkDone(0));
+
+        //a crc of 0 is a valid checksum, not a missing chunk
+        index.onChunkDone(entry, 0, 0);
+        assertTrue(entry.isChunkDone(0));
+
+        index.onChunkDone(entry, 2, 0xBEEFL);
+        index.onComplete(entry);
+        assertTrue(entry.isComplete());
+
+        index.onChunkCorrupt(entry, 1);
+        assertFalse(entry.isChunkDone(1));
+        assertFalse(entry.isComplete());
+        assertTrue(entry.isChunkDone(2));
+    }
+
+    @Test
+    public void resumesOnlyTheSameDownload() {
+        DownloadIndex index = new DownloadIndex(file);
+        DownloadIndex.Entry entry = index.start("abc", 3 * CHUNK_SIZE, CHUNK_SIZE, false);
+        index.onChunkDone(entry, 0, 0xCAFEL);
+
+        DownloadIndex.Entry resumed = index.start("abc", 3 * CHUNK_SIZE, CHUNK_SIZE, true);
+        assertSame(entry, resumed);
+        assertTrue(resumed.isChunkDone(0));
+
+        //the file was deleted in the meantime
+        DownloadIndex.Entry restarted = index.start("abc", 3 * CHUNK_SIZE, CHUNK_SIZE, false);
+        assertNotSame(entry, restarted);
+        assertFalse(restarted.isChunkDone(0));
+
+        //the stream changed
+        index.onChunkDone(restarted, 0, 0xCAFEL);
+        DownloadIndex.Entry changed = index.start("abc", 3 * CHUNK_SIZE + 1, CHUNK_SIZE, true);
+        assertNotSame(restarted, changed);
+        assertEquals(4, changed.getChunkCount());
+        assertFalse(changed.isChunkDone(0));
+        assertSame(changed, index.get("abc"));
+    }
+
+    @Test
+    public void readsTheWrittenIndex() throws IOException {
+        write("[{\"id\":\"abc\",\"length\":2500,\"chunkSize\":1000,\"chunks\":[51966,-1,0],\"complete\":false,\"lastUsed\":42},"
+                + "{\"id\":\"done\",\"length\":1000,\"chunkSize\":1000,\"chunks\":[48879],\"complete\":true,\"lastUsed\":43}]");
+
+        DownloadIndex index = new DownloadIndex(file);
+        DownloadIndex.Entry entry = index.get("abc");
+        assertEquals(2500, entry.getLength());
+        assertEquals(3, entry.getChunkCount());
+        assertEquals(500, entry.getChunkLength(2));
+        assertEquals(0xCAFEL, entry.getChunkCrc(0));
+        assertFalse(entry.isChunkDone(1));
+        assertTrue(entry.isChunkDone(2));
+        assertFalse(entry.isComplete());
+        assertEquals(42, entry.getLastUsedMs());
+
+        assertTrue(index.get("done").isComplete());
+        assertEquals(2, index.getEntries().size());
+    }
+
+    @Test
+    public void dropsEntriesWithTheWrongChunkCount() throws IOException {
+        write("[{\"id\":\"abc\",\"length\":2500,\"chunkSize\":1000,\"chunks\":[51966,-1]},"
+                + "{\"id\":\"done\",\"length\":1000,\"chunkSize\":1000,\"chunks\":[48879],\"complete\":true}]");
+
+        DownloadIndex index = new DownloadIndex(file);
+        assertNull(index.get("abc"));
+        assertTrue(index.get("done").isComplete());
+    }
+
+    @Test
+    public void startsEmptyFromAnUnreadableIndex() throws IOException {
+        write("[{\"id\":\"abc\",");
+
+        DownloadIndex index = new DownloadIndex(file);
+        assertTrue(index.getEntries().isEmpty());
+    }
+
+    @Test
+    public void removedDownloadsAreForgotten() {
+        DownloadIndex index = new DownloadIndex(file);
+        index.start("abc", CHUNK_SIZE, CHUNK_SIZE, false);
+        index.remove("abc");
+
+        assertNull(index.get("abc"));
+    }
+
+    private void write(String contents) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            AtomicTextFile.closeQuietly(out);
+        }
+    }
+}
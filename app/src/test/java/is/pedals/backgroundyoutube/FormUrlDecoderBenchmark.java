@@ -0,0 +1,143 @@
+package is.pedals.backgroundyoutube;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times the {@link FormUrlDecoder} against the split/HashMap/URLDecoder parsing it replaced on
+ * generated get_video_info bodies of 50, 150 and 300 KB.  Both parsers start from the raw bytes
+ * of the response, as they would when reading it from the network, and both results are checked
+ * to be the same before anything is timed.  The timings are printed, not asserted, since they
+ * depend on the machine running the tests.
+ */
+public class FormUrlDecoderBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int[] BODY_SIZES_KB = {50, 150, 300};
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 500;
+
+    private static final FormUrlDecoder VIDEO_INFO_DECODER = new FormUrlDecoder()
+            .want("dashmpd", 2)
+            .want("title", 1)
+            .want("iurlhq", 1)
+            .want("adaptive_fmts", 1);
+
+    //keeps the results reachable so the parsing can't be optimized away
+    private int checksum;
+
+    @Test
+    public void compareWithUrlDecoder() throws IOException {
+        for (int sizeKb : BODY_SIZES_KB) {
+            byte[] body = createVideoInfo(sizeKb * 1024).getBytes(UTF_8);
+            assertEquals(decodeWithUrlDecoder(body), decodeWithFormUrlDecoder(body));
+
+            long urlDecoderNanos = time(body, false);
+            long formUrlDecoderNanos = time(body, true);
+            System.out.println(String.format("get_video_info %d KB: URLDecoder %.1f us/op, FormUrlDecoder %.1f us/op (%.1fx)",
+                    body.length / 1024, urlDecoderNanos / 1000f, formUrlDecoderNanos / 1000f, (float) urlDecoderNanos / formUrlDecoderNanos));
+        }
+    }
+
+    /**
+     * @return the average nanoseconds per parse
+     */
+    private long time(byte[] body, boolean formUrlDecoder) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parse(body, formUrlDecoder);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            parse(body, formUrlDecoder);
+        }
+        return (System.nanoTime() - start) / MEASURED_ITERATIONS;
+    }
+
+    private void parse(byte[] body, boolean formUrlDecoder) throws IOException {
+        Map<String, String> values = formUrlDecoder ? decodeWithFormUrlDecoder(body) : decodeWithUrlDecoder(body);
+        checksum += values.get("dashmpd").length();
+    }
+
+    private static Map<String, String> decodeWithFormUrlDecoder(byte[] body) throws IOException {
+        return VIDEO_INFO_DECODER.decode(new Buffer().write(body));
+    }
+
+    /**
+     * The parsing that the {@link FormUrlDecoder} replaced, reduced to the same keys
+     */
+    private static Map<String, String> decodeWithUrlDecoder(byte[] body) throws IOException {
+        Map<String, String> data = new HashMap<>();
+        for (String item : new String(body, UTF_8).split("&")) {
+            String[] keyvals = item.split("=");
+            data.put(keyvals[0], keyvals.length == 2 ? URLDecoder.decode(keyvals[1], "utf-8") : null);
+        }
+
+        //dashmpd is double encoded, so it is decoded again
+        Map<String, String> values = new HashMap<>();
+        values.put("dashmpd", URLDecoder.decode(data.get("dashmpd"), "utf-8"));
+        values.put("title", data.get("title"));
+        values.put("iurlhq", data.get("iurlhq"));
+        values.put("adaptive_fmts", data.get("adaptive_fmts"));
+        return values;
+    }
+
+    /**
+     * Generates a body shaped like get_video_info: most of it is taken up by the encoded stream
+     * maps, the wanted keys are spread through it and the last of them is at the very end, so
+     * neither parser can stop early.
+     */
+    private static String createVideoInfo(int size) throws IOException {
+        Random random = new Random(size);
+        StringBuilder body = new StringBuilder(size + 4096);
+        body.append("status=ok&length_seconds=301&title=").append(encode("Bj\u00f8rk \u2013 J\u00f3ga (Live) & more"));
+        body.append("&adaptive_fmts=").append(encode(createStreamMap(random, 24)));
+        body.append("&dashmpd=").append(encode(encode("https://manifest.googlevideo.com/api/manifest/dash/sparams/as%2Chfr%2Cid"
+                + "/id/o-AB12cd/expire/1445000000/signature/1A2B3C.4D5E6F/")));
+
+        //the rest of the stream maps and the other keys fill the body up to its size
+        int fill = 0;
+        while (body.length() < size - 256) {
+            body.append("&url_encoded_fmt_stream_map_").append(fill++).append('=').append(encode(createStreamMap(random, 4)));
+            body.append("&fflags=").append(encode("&flag" + random.nextInt(1000) + "=true"));
+        }
+
+        body.append("&token=vjVQa1PpcFN&iurlhq=").append(encode("https://i.ytimg.com/vi/abcdefghijk/hqdefault.jpg"));
+        return body.toString();
+    }
+
+    private static String createStreamMap(Random random, int count) throws IOException {
+        StringBuilder map = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                map.append(',');
+            }
+
+            int itag = 133 + random.nextInt(120);
+            String url = "https://r4---sn-abc.googlevideo.com/videoplayback?id=o-AB12cd&itag=" + itag + "&mime=audio%2Fmp4"
+                    + "&sparams=clen%2Cdur%2Cid%2Cinitcwndbps%2Cip%2Cipbits%2Citag%2Clmt%2Cmime%2Cmm%2Cmn%2Cms%2Cmv"
+                    + "&signature=" + Long.toHexString(random.nextLong()).toUpperCase() + "." + Long.toHexString(random.nextLong()).toUpperCase();
+            map.append("itag=").append(itag)
+                    .append("&url=").append(encode(url))
+                    .append("&clen=").append(1000000 + random.nextInt(9000000))
+                    .append("&type=").append(encode("audio/mp4; codecs=\"mp4a.40.2\""))
+                    .append("&index=592-1247&init=0-591&bitrate=").append(128000 + random.nextInt(64000));
+        }
+        return map.toString();
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
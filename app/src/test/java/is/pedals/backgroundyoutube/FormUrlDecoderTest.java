@@ -0,0 +1,127 @@
+package is.pedals.backgroundyoutube;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pins the output of the {@link FormUrlDecoder} to that of the URLDecoder based parsing it replaced
+ */
+public class FormUrlDecoderTest {
+
+    private static final String DASHMPD = "https://manifest.googlevideo.com/api/manifest/dash/sparams/as%2Chfr%2Cid/id/o-AB12cd"
+            + "/expire/1445000000/signature/1A2B3C.4D5E6F/";
+    private static final String AUDIO_URL = "https://r4---sn-abc.googlevideo.com/videoplayback?id=o-AB12cd&itag=140"
+            + "&mime=audio%2Fmp4&sparams=clen%2Cdur%2Cid&signature=1A2B.3C4D";
+    private static final String OPUS_URL = "https://r4---sn-abc.googlevideo.com/videoplayback?id=o-AB12cd&itag=251"
+            + "&mime=audio%2Fwebm&sparams=clen%2Cdur%2Cid";
+    private static final String TITLE = "Bj\u00f8rk \u2013 J\u00f3ga (Live) & more + 100% \"quotes\"";
+    private static final String IURLHQ = "https://i.ytimg.com/vi/abcdefghijk/hqdefault.jpg";
+
+    private static final FormUrlDecoder VIDEO_INFO_DECODER = new FormUrlDecoder()
+            .want("dashmpd", 2)
+            .want("title", 1)
+            .want("iurlhq", 1)
+            .want("adaptive_fmts", 1);
+
+    private static final FormUrlDecoder ADAPTIVE_FORMAT_DECODER = new FormUrlDecoder()
+            .want("itag", 1)
+            .want("url", 1)
+            .want("clen", 1)
+            .want("s", 1);
+
+    @Test
+    public void videoInfoMatchesUrlDecoder() throws IOException {
+        String body = createVideoInfo();
+        Map<String, String> expected = decodeWithUrlDecoder(body);
+        //dashmpd is double encoded, so it was decoded again
+        expected.put("dashmpd", URLDecoder.decode(expected.get("dashmpd"), "utf-8"));
+
+        Map<String, String> actual = VIDEO_INFO_DECODER.decode(new Buffer().writeUtf8(body));
+        assertEquals(DASHMPD, actual.get("dashmpd"));
+        assertEquals(TITLE, actual.get("title"));
+        assertWantedEqual(expected, actual, "dashmpd", "title", "iurlhq", "adaptive_fmts");
+    }
+
+    @Test
+    public void adaptiveFormatsMatchUrlDecoder() throws IOException {
+        String adaptiveFormats = VIDEO_INFO_DECODER.decode(new Buffer().writeUtf8(createVideoInfo())).get("adaptive_fmts");
+        String[] formats = adaptiveFormats.split(",");
+        assertEquals(2, formats.length);
+
+        for (String format : formats) {
+            Map<String, String> expected = decodeWithUrlDecoder(format);
+            Map<String, String> actual = ADAPTIVE_FORMAT_DECODER.decode(new Buffer().writeUtf8(format));
+            assertWantedEqual(expected, actual, "itag", "url", "clen", "s");
+        }
+
+        Map<String, String> audio = ADAPTIVE_FORMAT_DECODER.decode(new Buffer().writeUtf8(formats[0]));
+        assertEquals(AUDIO_URL, audio.get("url"));
+        assertEquals("3456789", audio.get("clen"));
+    }
+
+    @Test
+    public void missingKeysAreAbsent() throws IOException {
+        Map<String, String> actual = VIDEO_INFO_DECODER.decode(new Buffer().writeUtf8("status=fail&reason=" + encode("Invalid parameters.")));
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    public void keysWithoutValuesAreSkipped() throws IOException {
+        Map<String, String> actual = VIDEO_INFO_DECODER.decode(new Buffer().writeUtf8("has_cc&title=" + encode(TITLE) + "&iurlhq"));
+        assertEquals(TITLE, actual.get("title"));
+        assertFalse(actual.containsKey("iurlhq"));
+        assertFalse(actual.containsKey("has_cc"));
+    }
+
+    @Test
+    public void stopsReadingOnceTheWantedKeysAreFound() throws IOException {
+        Buffer source = new Buffer().writeUtf8("itag=140&url=" + encode(AUDIO_URL) + "&clen=1&s=ABC&type=audio%2Fmp4&index=0-100");
+        ADAPTIVE_FORMAT_DECODER.decode(source);
+        assertEquals("type=audio%2Fmp4&index=0-100", source.readUtf8());
+    }
+
+    private static String createVideoInfo() throws IOException {
+        String audio = "itag=140&url=" + encode(AUDIO_URL) + "&clen=3456789&type=" + encode("audio/mp4; codecs=\"mp4a.40.2\"") + "&index=592-1247";
+        String opus = "type=" + encode("audio/webm; codecs=\"opus\"") + "&url=" + encode(OPUS_URL) + "&s=" + encode("ABC=DEF/GHI+JKL") + "&itag=251&clen=4012345";
+
+        return "status=ok&length_seconds=301&title=" + encode(TITLE)
+                + "&adaptive_fmts=" + encode(audio + "," + opus)
+                + "&has_cc"
+                + "&iurlhq=" + encode(IURLHQ)
+                + "&dashmpd=" + encode(encode(DASHMPD))
+                + "&token=vjVQa1PpcFN";
+    }
+
+    /**
+     * The parsing that the {@link FormUrlDecoder} replaced
+     */
+    private static Map<String, String> decodeWithUrlDecoder(String body) throws IOException {
+        Map<String, String> data = new HashMap<>();
+        for (String item : body.split("&")) {
+            String[] keyvals = item.split("=");
+            data.put(keyvals[0], keyvals.length == 2 ? URLDecoder.decode(keyvals[1], "utf-8") : null);
+        }
+        return data;
+    }
+
+    private static void assertWantedEqual(Map<String, String> expected, Map<String, String> actual, String... keys) {
+        for (String key : keys) {
+            assertEquals(key, expected.get(key), actual.get(key));
+        }
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
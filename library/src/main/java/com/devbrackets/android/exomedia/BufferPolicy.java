@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia;
+
+import com.google.android.exoplayer.DefaultLoadControl;
+import com.google.android.exoplayer.ExoPlayer;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+
+/**
+ * Describes how much media the player buffers and when.  The policy is given to the
+ * {@link com.devbrackets.android.exomedia.exoplayer.EMExoPlayer}, which uses the start and
+ * rebuffer thresholds, and to the {@link com.devbrackets.android.exomedia.builder.RenderBuilder}s,
+ * which use the rest to size the allocator and configure the {@link DefaultLoadControl}.
+ * <p/>
+ * A few profiles are provided for trading memory, start up time and radio usage against
+ * each other.  Custom policies can be created with the constructor.
+ */
+public final class BufferPolicy {
+    private static final int KB = 1024;
+    private static final int MB = 1024 * KB;
+
+    /**
+     * The values the library has always used
+     */
+    public static final BufferPolicy DEFAULT = new BufferPolicy("default", 64 * KB, 256 * KB, 60 * 64 * KB, 200 * 64 * KB,
+            1000, 5000, 15000, 30000, 0.2f, 0.8f);
+
+    /**
+     * Small buffers for devices with little memory, at the cost of more frequent stalls
+     * on unreliable networks
+     */
+    public static final BufferPolicy LOW_MEMORY = new BufferPolicy("low-memory", 32 * KB, MB, 4 * MB,
+            1000, 5000, 10000, 20000, 0.2f, 0.8f);
+
+    /**
+     * Starts playback with as little buffered as possible
+     */
+    public static final BufferPolicy FAST_START = new BufferPolicy("fast-start", 64 * KB, 256 * KB, 60 * 64 * KB, 200 * 64 * KB,
+            500, 2500, 15000, 30000, 0.2f, 0.8f);
+
+    /**
+     * Loads in bursts for background listening: the buffer is filled to three minutes and then
+     * nothing is loaded until it drops under thirty seconds, letting the radio sleep in between
+     */
+    public static final BufferPolicy BATTERY_SAVER = new BufferPolicy("battery-saver", 256 * KB, 8 * MB, 16 * MB,
+            1000, 5000, 30000, 180000, 0.1f, 0.9f);
+
+    /**
+     * Loads in bursts like {@link #BATTERY_SAVER}, but only up to a minute ahead so that
+     * little is wasted on metered networks when the item is skipped or stopped early
+     */
+    public static final BufferPolicy DATA_SAVER = new BufferPolicy("data-saver", 128 * KB, 4 * MB, 8 * MB,
+            1000, 5000, 20000, 60000, 0.1f, 0.9f);
+
+    private final String name;
+    private final int allocatorChunkSize;
+    private final int hlsAllocatorChunkSize;
+    private final int audioBufferSize;
+    private final int videoBufferSize;
+    private final int minBufferMs;
+    private final int minRebufferMs;
+    private final int lowWatermarkMs;
+    private final int highWatermarkMs;
+    private final float lowBufferLoad;
+    private final float highBufferLoad;
+
+    /**
+     * Creates a policy whose HLS streams are allocated in chunks of the same size as the others
+     *
+     * @param name A name for the policy, used in logs
+     * @param allocatorChunkSize The size in bytes of each chunk of the {@link DefaultAllocator}
+     * @param audioBufferSize The number of bytes of audio to buffer at most
+     * @param videoBufferSize The number of bytes of video to buffer at most
+     * @param minBufferMs The duration that must be buffered before playback starts (see {@link ExoPlayer.Factory})
+     * @param minRebufferMs The duration that must be buffered before playback resumes after a stall
+     * @param lowWatermarkMs Loading resumes once the buffer drops below this duration (see {@link DefaultLoadControl})
+     * @param highWatermarkMs Loading stops once the buffer exceeds this duration
+     * @param lowBufferLoad The fraction of the buffer size under which loading resumes
+     * @param highBufferLoad The fraction of the buffer size over which loading stops
+     */
+    public BufferPolicy(String name, int allocatorChunkSize, int audioBufferSize, int videoBufferSize, int minBufferMs, int minRebufferMs,
+                        int lowWatermarkMs, int highWatermarkMs, float lowBufferLoad, float highBufferLoad) {
+        this(name, allocatorChunkSize, allocatorChunkSize, audioBufferSize, videoBufferSize, minBufferMs, minRebufferMs,
+                lowWatermarkMs, highWatermarkMs, lowBufferLoad, highBufferLoad);
+    }
+
+    /**
+     * @param name A name for the policy, used in logs
+     * @param allocatorChunkSize The size in bytes of each chunk of the {@link DefaultAllocator}
+     * @param hlsAllocatorChunkSize The size in bytes of each chunk of the {@link DefaultAllocator} for HLS streams,
+     *                              whose transport stream segments are loaded in larger pieces
+     * @param audioBufferSize The number of bytes of audio to buffer at most
+     * @param videoBufferSize The number of bytes of video to buffer at most
+     * @param minBufferMs The duration that must be buffered before playback starts (see {@link ExoPlayer.Factory})
+     * @param minRebufferMs The duration that must be buffered before playback resumes after a stall
+     * @param lowWatermarkMs Loading resumes once the buffer drops below this duration (see {@link DefaultLoadControl})
+     * @param highWatermarkMs Loading stops once the buffer exceeds this duration
+     * @param lowBufferLoad The fraction of the buffer size under which loading resumes
+     * @param highBufferLoad The fraction of the buffer size over which loading stops
+     */
+    public BufferPolicy(String name, int allocatorChunkSize, int hlsAllocatorChunkSize, int audioBufferSize, int videoBufferSize, int minBufferMs,
+                        int minRebufferMs, int lowWatermarkMs, int highWatermarkMs, float lowBufferLoad, float highBufferLoad) {
+        this.name = name;
+        this.allocatorChunkSize = allocatorChunkSize;
+        this.hlsAllocatorChunkSize = hlsAllocatorChunkSize;
+        this.audioBufferSize = audioBufferSize;
+        this.videoBufferSize = videoBufferSize;
+        this.minBufferMs = minBufferMs;
+        this.minRebufferMs = minRebufferMs;
+        this.lowWatermarkMs = lowWatermarkMs;
+        this.highWatermarkMs = highWatermarkMs;
+        this.lowBufferLoad = lowBufferLoad;
+        this.highBufferLoad = highBufferLoad;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAllocatorChunkSize() {
+        return allocatorChunkSize;
+    }
+
+    public int getHlsAllocatorChunkSize() {
+        return hlsAllocatorChunkSize;
+    }
+
+    public int getAudioBufferSize() {
+        return audioBufferSize;
+    }
+
+    public int getVideoBufferSize() {
+        return videoBufferSize;
+    }
+
+    /**
+     * @param audioOnly True if only the audio is being rendered
+     * @return The number of bytes of media to buffer at most
+     */
+    public int getTotalBufferSize(boolean audioOnly) {
+        return audioOnly ? audioBufferSize : audioBufferSize + videoBufferSize;
+    }
+
+    public int getMinBufferMs() {
+        return minBufferMs;
+    }
+
+    public int getMinRebufferMs() {
+        return minRebufferMs;
+    }
+
+    public int getLowWatermarkMs() {
+        return lowWatermarkMs;
+    }
+
+    public int getHighWatermarkMs() {
+        return highWatermarkMs;
+    }
+
+    public float getLowBufferLoad() {
+        return lowBufferLoad;
+    }
+
+    public float getHighBufferLoad() {
+        return highBufferLoad;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -20,17 +20,26 @@ import android.content.Context;
 import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Build;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.devbrackets.android.exomedia.builder.AdaptiveAudioEvaluator;
+import com.devbrackets.android.exomedia.cache.MediaCache;
 import com.devbrackets.android.exomedia.builder.DashRendererBuilder;
 import com.devbrackets.android.exomedia.builder.HlsRenderBuilder;
 import com.devbrackets.android.exomedia.builder.RenderBuilder;
+import com.devbrackets.android.exomedia.event.EMEventDispatcher;
 import com.devbrackets.android.exomedia.event.EMMediaProgressEvent;
 import com.devbrackets.android.exomedia.exoplayer.EMExoPlayer;
 import com.devbrackets.android.exomedia.listener.EMProgressCallback;
 import com.devbrackets.android.exomedia.listener.ExoPlayerListener;
+import com.devbrackets.android.exomedia.listener.InternalErrorListener;
+import com.devbrackets.android.exomedia.listener.LoadingListener;
+import com.devbrackets.android.exomedia.util.BurstStats;
 import com.devbrackets.android.exomedia.util.EMDeviceUtil;
+import com.devbrackets.android.exomedia.util.MediaProgressHolder;
 import com.devbrackets.android.exomedia.util.MediaUtil;
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
 import com.devbrackets.android.exomedia.util.Repeater;
 import com.devbrackets.android.exomedia.util.StopWatch;
 import com.google.android.exoplayer.audio.AudioCapabilities;
@@ -79,6 +88,13 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
 
     private boolean overridePosition = false;
 
+    private BufferPolicy bufferPolicy;
+    private MediaCache mediaCache;
+    private String contentId;
+    private Exception lastError;
+    private int minAudioBitrate = AdaptiveAudioEvaluator.NO_LIMIT;
+    private int maxAudioBitrate = AdaptiveAudioEvaluator.NO_LIMIT;
+
     private Bus bus;
     private EMProgressCallback progressCallback;
 
@@ -89,9 +105,20 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
     private AudioCapabilitiesReceiver audioCapabilitiesReceiver;
 
     private EMMediaProgressEvent currentMediaProgressEvent = new EMMediaProgressEvent(0, 0, 0);
+    private final MediaProgressHolder progressHolder = new MediaProgressHolder();
+    private EMEventDispatcher.Channel<EMMediaProgressEvent> progressChannel;
 
     public EMAudioPlayer(Context context) {
+        this(context, BufferPolicy.DEFAULT);
+    }
+
+    /**
+     * @param context The context to use
+     * @param bufferPolicy The policy that determines how much audio is buffered and when playback starts
+     */
+    public EMAudioPlayer(Context context, BufferPolicy bufferPolicy) {
         this.context = context;
+        this.bufferPolicy = bufferPolicy;
         useExo = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN  && EMDeviceUtil.isDeviceCTSCompliant();
 
         if (!useExo && mediaPlayer == null) {
@@ -104,6 +131,7 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
             @Override
             public void onRepeat() {
                 currentMediaProgressEvent.update(getCurrentPosition(), getBufferPercentage(), getDuration());
+                progressHolder.publish(currentMediaProgressEvent);
 
                 if (progressCallback != null && progressCallback.onProgressUpdated(currentMediaProgressEvent)) {
                     return;
@@ -112,6 +140,10 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
                 if (bus != null) {
                     bus.post(currentMediaProgressEvent);
                 }
+
+                if (progressChannel != null) {
+                    progressChannel.post(currentMediaProgressEvent);
+                }
             }
         });
     }
@@ -126,7 +158,7 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
         }
 
         if (emExoPlayer == null) {
-            emExoPlayer = new EMExoPlayer();
+            emExoPlayer = new EMExoPlayer(null, bufferPolicy);
 
             //Sets the internal listener
             listenerMux = new EMListenerMux(new MuxNotifier());
@@ -161,7 +193,8 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
 
     /**
      * Sets the delay to use when notifying of progress.  The
-     * default is 33 milliseconds, or 30 frames-per-second
+     * default is 33 milliseconds, or 30 frames-per-second.  This can
+     * be changed while the poll is running.
      *
      * @param milliSeconds The millisecond delay to use
      */
@@ -169,6 +202,16 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
         pollRepeater.setRepeaterDelay(milliSeconds);
     }
 
+    /**
+     * Retrieves how many times per minute the progress poll has woken up the
+     * thread it runs on, to verify the poll isn't running more than needed
+     *
+     * @return The number of wakeups per minute
+     */
+    public int getProgressPollWakeupsPerMinute() {
+        return pollRepeater.getWakeupsPerMinute();
+    }
+
     /**
      * Sets the bus to use for dispatching Events such as the poll progress
      *
@@ -179,6 +222,17 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
         listenerMux.setBus(bus);
     }
 
+    /**
+     * Sets the dispatcher to post the progress and playback events to, in addition to the bus.
+     * Unlike the bus it delivers the progress events without reflection or allocations.
+     *
+     * @param eventDispatcher The dispatcher or null
+     */
+    public void setEventDispatcher(@Nullable EMEventDispatcher eventDispatcher) {
+        progressChannel = eventDispatcher != null ? eventDispatcher.getChannel(EMMediaProgressEvent.class) : null;
+        listenerMux.setEventDispatcher(eventDispatcher);
+    }
+
     /**
      * Starts the progress poll.
      *
@@ -214,6 +268,48 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
         pollRepeater.stop();
     }
 
+    /**
+     * Changes the buffer policy for the following items.  The buffer sizes and load watermarks
+     * take effect with the next call to {@link #setDataSource(Context, Uri)}, however the start and
+     * rebuffer thresholds can only be set with the constructor.
+     * <p/>
+     * <b><em>NOTE:</em></b> the item that is currently loaded keeps the policy it was prepared with,
+     * since its sample sources and load control are sized when the renderers are built and can't
+     * be changed afterwards.
+     *
+     * @param bufferPolicy The policy to use
+     */
+    public void setBufferPolicy(BufferPolicy bufferPolicy) {
+        this.bufferPolicy = bufferPolicy;
+    }
+
+    public BufferPolicy getBufferPolicy() {
+        return bufferPolicy;
+    }
+
+    /**
+     * Sets the cache that streamed audio is loaded through.  This takes effect with
+     * the next call to {@link #setDataSource(Context, Uri)} and is ignored when the
+     * MediaPlayer is used instead of the ExoPlayer.
+     *
+     * @param mediaCache The cache or null to always load from the network
+     */
+    public void setMediaCache(@Nullable MediaCache mediaCache) {
+        this.mediaCache = mediaCache;
+    }
+
+    /**
+     * Limits the bitrates that will be switched between when the audio is streamed
+     * with DASH.  This takes effect with the next call to {@link #setDataSource(Context, Uri)}.
+     *
+     * @param minBitrate The lowest bitrate in bits per second, or {@link AdaptiveAudioEvaluator#NO_LIMIT}
+     * @param maxBitrate The highest bitrate in bits per second, or {@link AdaptiveAudioEvaluator#NO_LIMIT}
+     */
+    public void setAudioBitrateLimits(int minBitrate, int maxBitrate) {
+        this.minAudioBitrate = minBitrate;
+        this.maxAudioBitrate = maxBitrate;
+    }
+
     /**
      * Creates and returns the correct render builder for the specified AudioType and uri.
      *
@@ -223,14 +319,26 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
      * @return                  The appropriate RenderBuilder
      */
     private RenderBuilder getRendererBuilder(AudioType renderType, Uri uri, MediaUtil.MediaType defaultMediaType) {
+        RenderBuilder renderBuilder;
         switch (renderType) {
             case HLS:
-                return new HlsRenderBuilder(context, getUserAgent(), uri.toString(), audioCapabilities);
+                renderBuilder = new HlsRenderBuilder(context, getUserAgent(), uri.toString(), audioCapabilities);
+                break;
             case DASH:
-                return new DashRendererBuilder(context, getUserAgent(), uri.toString(), audioCapabilities);
+                DashRendererBuilder dashRendererBuilder = new DashRendererBuilder(context, getUserAgent(), uri.toString(), audioCapabilities);
+                dashRendererBuilder.setAudioBitrateLimits(minAudioBitrate, maxAudioBitrate);
+                renderBuilder = dashRendererBuilder;
+                break;
             default:
-                return new RenderBuilder(context, getUserAgent(), uri.toString(), defaultMediaType);
+                renderBuilder = new RenderBuilder(context, getUserAgent(), uri.toString(), defaultMediaType);
+                break;
         }
+
+        //Nothing is ever displayed, so don't spend any memory or bandwidth on video
+        renderBuilder.setAudioOnly(true);
+        renderBuilder.setBufferPolicy(bufferPolicy);
+        renderBuilder.setMediaCache(mediaCache, contentId);
+        return renderBuilder;
     }
 
     /**
@@ -245,7 +353,20 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
 
     @Produce
     public EMMediaProgressEvent produceMediaProgressEvent() {
-        return currentMediaProgressEvent;
+        EMMediaProgressEvent snapshot = progressHolder.getSnapshot();
+        return snapshot != null ? snapshot : EMMediaProgressEvent.obtain(currentMediaProgressEvent);
+    }
+
+    /**
+     * Copies the latest progress reported by the progress poll in to the event.  Unlike the
+     * event passed to the progress callbacks, which is re-used for every update, this can be
+     * called from any thread and the event stays unchanged until the next call.
+     *
+     * @param event The event to update with the latest progress
+     * @return True if the event was updated, false if no progress has been reported yet
+     */
+    public boolean readProgress(EMMediaProgressEvent event) {
+        return progressHolder.read(event);
     }
 
     /**
@@ -298,6 +419,22 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
      * @param defaultMediaType The MediaType to use when auto-detection fails
      */
     public void setDataSource(Context context, Uri uri, MediaUtil.MediaType defaultMediaType) {
+        setDataSource(context, uri, defaultMediaType, null);
+    }
+
+    /**
+     * Sets the source path for the audio item.  This path can be a web address (e.g. http://) or
+     * an absolute local path (e.g. file://)
+     *
+     * @param context The applications context that owns the media
+     * @param uri The Uri representing the path to the audio item
+     * @param defaultMediaType The MediaType to use when auto-detection fails
+     * @param contentId A stable id for the audio item, used as part of the keys for the {@link #setMediaCache(MediaCache) cache}
+     */
+    public void setDataSource(Context context, Uri uri, MediaUtil.MediaType defaultMediaType, @Nullable String contentId) {
+        this.contentId = contentId;
+        lastError = null;
+        setPlaybackTrace(null);
         if (!useExo) {
             try {
                 mediaPlayer.setDataSource(context, uri);
@@ -443,6 +580,7 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
     }
 
     public void release() {
+        setPlaybackTrace(null);
         if (!useExo) {
             mediaPlayer.release();
         } else {
@@ -616,6 +754,88 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
         listenerMux.setOnErrorListener(listener);
     }
 
+    /**
+     * Sets the listener to inform of errors the ExoPlayer may still recover from, such as
+     * a failed load that will be retried.  This is only supported when the ExoPlayer is used.
+     *
+     * @param listener The listener
+     */
+    public void setInternalErrorListener(InternalErrorListener listener) {
+        if (useExo) {
+            emExoPlayer.setInternalErrorListener(listener);
+        }
+    }
+
+    /**
+     * Retrieves the error that stopped the playback of the current item, so the
+     * listener set with {@link #setOnErrorListener(MediaPlayer.OnErrorListener)} can
+     * determine how to recover.
+     *
+     * @return The error or null if there wasn't one, or the MediaPlayer is used
+     */
+    @Nullable
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Sets the listener to inform when loading starts and stops.  This is only
+     * supported when the ExoPlayer is used (see {@link #isLoadingReported()}).
+     *
+     * @param listener The listener
+     */
+    public void setLoadingListener(LoadingListener listener) {
+        if (useExo) {
+            emExoPlayer.setLoadingListener(listener);
+        }
+    }
+
+    /**
+     * Sets the trace to mark while the current item is prepared, see {@link PlaybackTracer}.  The
+     * trace is abandoned if the player moves on (or is released) before the item is ready, so this
+     * must be called after {@link #setDataSource(Context, Uri)}.
+     *
+     * @param trace The trace of the current item or null
+     */
+    public void setPlaybackTrace(@Nullable PlaybackTracer.Trace trace) {
+        PlaybackTracer.Trace previousTrace = listenerMux.getPlaybackTrace();
+        if (previousTrace != trace) {
+            PlaybackTracer.abandon(previousTrace);
+        }
+
+        listenerMux.setPlaybackTrace(trace);
+        if (useExo) {
+            emExoPlayer.setPlaybackTrace(trace);
+        }
+    }
+
+    @Nullable
+    public PlaybackTracer.Trace getPlaybackTrace() {
+        return listenerMux.getPlaybackTrace();
+    }
+
+    /**
+     * Determines if the listener set with {@link #setLoadingListener(LoadingListener)} will be informed.
+     * This is only the case for the DASH and HLS items played with the ExoPlayer, when it isn't
+     * loading should be assumed to happen for as long as an item is streamed.
+     *
+     * @return True if loading changes are reported for the current item
+     */
+    public boolean isLoadingReported() {
+        return useExo && emExoPlayer.isLoadingReported();
+    }
+
+    /**
+     * Retrieves the statistics on how long the radio was kept active loading and how
+     * much was loaded each time.
+     *
+     * @return The burst statistics or null if loading isn't reported (see {@link #isLoadingReported()})
+     */
+    @Nullable
+    public BurstStats getBurstStats() {
+        return isLoadingReported() ? emExoPlayer.getBurstStats() : null;
+    }
+
     /**
      * Sets the listener to inform of media information events.
      *
@@ -651,6 +871,7 @@ public class EMAudioPlayer implements AudioCapabilitiesReceiver.Listener {
 
         @Override
         public void onExoPlayerError(Exception e) {
+            lastError = e;
             if (emExoPlayer != null) {
                 emExoPlayer.forcePrepare();
             }
@@ -19,11 +19,14 @@ package com.devbrackets.android.exomedia;
 import android.media.MediaPlayer;
 import android.os.Handler;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import com.devbrackets.android.exomedia.event.EMEventDispatcher;
 import com.devbrackets.android.exomedia.event.EMMediaCompletionEvent;
 import com.devbrackets.android.exomedia.event.EMMediaErrorEvent;
 import com.devbrackets.android.exomedia.event.EMMediaPreparedEvent;
 import com.devbrackets.android.exomedia.listener.ExoPlayerListener;
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
 import com.google.android.exoplayer.ExoPlayer;
 import com.squareup.otto.Bus;
 
@@ -46,6 +49,8 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
     private Handler delayedHandler = new Handler();
     private EMListenerMuxNotifier muxNotifier;
     private Bus bus;
+    private EMEventDispatcher eventDispatcher;
+    private PlaybackTracer.Trace playbackTrace;
 
     private List<ExoPlayerListener> exoPlayerListeners = new LinkedList<>();
 
@@ -75,8 +80,8 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
             completionListener.onCompletion(null);
         }
 
-        if (bus != null) {
-            bus.post(new EMMediaCompletionEvent());
+        if (isPostingEvents()) {
+            postEvent(new EMMediaCompletionEvent());
         }
     }
 
@@ -86,8 +91,8 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
             return true;
         }
 
-        if (bus != null) {
-            bus.post(new EMMediaErrorEvent(mp, what, extra));
+        if (isPostingEvents()) {
+            postEvent(new EMMediaErrorEvent(mp, what, extra));
             return true;
         }
 
@@ -101,6 +106,7 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
 
     @Override
     public void onPrepared(final MediaPlayer mp) {
+        PlaybackTracer.mark(playbackTrace, PlaybackTracer.Phase.READY);
         notifiedPrepared = true;
 
         delayedHandler.post(new Runnable() {
@@ -124,8 +130,8 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
             listener.onError(e);
         }
 
-        if (bus != null) {
-            bus.post(new EMMediaErrorEvent(null, 0, 0));
+        if (isPostingEvents()) {
+            postEvent(new EMMediaErrorEvent(null, 0, 0));
         }
     }
 
@@ -138,6 +144,7 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
                 notifyCompletionListener();
             }
         } else if (playbackState == ExoPlayer.STATE_READY && !notifiedPrepared) {
+            PlaybackTracer.mark(playbackTrace, PlaybackTracer.Phase.READY);
             notifyPreparedListener(null);
         }
 
@@ -159,6 +166,15 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
         this.bus = bus;
     }
 
+    /**
+     * Sets the dispatcher to post the playback events to, in addition to the bus
+     *
+     * @param eventDispatcher The dispatcher or null
+     */
+    public void setEventDispatcher(@Nullable EMEventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+    }
+
     /**
      * Sets the listener to inform of any exoPlayer events
      *
@@ -239,6 +255,20 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
         muxNotifier.onPreviewImageStateChanged(true);
     }
 
+    /**
+     * Sets the trace that is completed when the player is first ready
+     *
+     * @param trace The trace of the current item or null
+     */
+    public void setPlaybackTrace(@Nullable PlaybackTracer.Trace trace) {
+        playbackTrace = trace;
+    }
+
+    @Nullable
+    public PlaybackTracer.Trace getPlaybackTrace() {
+        return playbackTrace;
+    }
+
     /**
      * Retrieves if the player was prepared
      *
@@ -277,8 +307,22 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
             preparedListener.onPrepared(mediaPlayer);
         }
 
+        if (isPostingEvents()) {
+            postEvent(new EMMediaPreparedEvent());
+        }
+    }
+
+    private boolean isPostingEvents() {
+        return bus != null || eventDispatcher != null;
+    }
+
+    private void postEvent(Object event) {
         if (bus != null) {
-            bus.post(new EMMediaPreparedEvent());
+            bus.post(event);
+        }
+
+        if (eventDispatcher != null) {
+            eventDispatcher.post(event);
         }
     }
 
@@ -296,8 +340,8 @@ class EMListenerMux implements ExoPlayerListener, MediaPlayer.OnPreparedListener
                     completionListener.onCompletion(null);
                 }
 
-                if (bus != null) {
-                    bus.post(new EMMediaCompletionEvent());
+                if (isPostingEvents()) {
+                    postEvent(new EMMediaCompletionEvent());
                 }
             }
         });
@@ -24,10 +24,12 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Build;
+import android.os.SystemClock;
 import android.support.annotation.DrawableRes;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.devbrackets.android.exomedia.receiver.MediaControlsReceiver;
@@ -35,9 +37,17 @@ import com.devbrackets.android.exomedia.receiver.MediaControlsReceiver;
 /**
  * A class to help simplify lock screen artwork and playback
  * controls similar to how the {@link EMNotification} simplifies notifications
+ * <p/>
+ * The playback state is published with its position, speed and update time, so the lock
+ * screen and remote controllers (e.g. Bluetooth) extrapolate the progress on their own.  It
+ * only needs to be updated when the playback changes (play, pause, seek, new item).  The
+ * metadata, which carries the images, is only re-sent when the title or artwork changes.
  */
 public class EMLockScreen {
     private static final String TAG = "EMLockScreen";
+
+    //How far a published position may be from where the extrapolation would put it before it is re-sent
+    private static final long POSITION_DRIFT_TOLERANCE = 500;
     public static final String SESSION_TAG = "EMLockScreen.Session";
     public static final String RECEIVER_EXTRA_CLASS = "RECEIVER_EXTRA_CLASS";
 
@@ -46,9 +56,26 @@ public class EMLockScreen {
 
     private boolean showLockScreen = true;
 
+    @DrawableRes
+    private int appIconRes;
     private Bitmap appIconBitmap;
     private MediaSessionCompat mediaSession;
 
+    //What was last sent to the media session, to skip re-sending it
+    private boolean metadataPublished = false;
+    private String publishedTitle;
+    private String publishedSubTitle;
+    private Bitmap publishedArtwork;
+    private int publishedArtworkGeneration;
+    private Bitmap publishedAppIcon;
+
+    private boolean statePublished = false;
+    private int publishedState;
+    private long publishedActions;
+    private long publishedPosition;
+    private float publishedSpeed;
+    private long publishedUpdateTime;
+
     /**
      * Creates a new EMLockScreen object
      *
@@ -86,6 +113,8 @@ public class EMLockScreen {
         //Remove the lock screen when disabling
         if (!enabled) {
             mediaSession.setActive(false);
+            metadataPublished = false;
+            statePublished = false;
         }
     }
 
@@ -102,19 +131,58 @@ public class EMLockScreen {
      * @param appIcon The applications icon resource
      */
     public void setLockScreenBaseInformation(@DrawableRes int appIcon) {
+        //The icon is only decoded when it changes
+        if (appIconBitmap != null && appIcon == appIconRes) {
+            return;
+        }
+
+        appIconRes = appIcon;
         appIconBitmap = BitmapFactory.decodeResource(context.getResources(), appIcon);
     }
 
     /**
-     * Sets the volatile information for the lock screen controls.  This information is expected to
-     * change frequently.
+     * Sets the volatile information for the lock screen controls without a playback position.
+     * See {@link #updateLockScreenInformation(String, String, Bitmap, EMNotification.NotificationMediaState, long, float)}
      *
      * @param title The title to display for the notification (e.g. A song name)
      * @param subTitle A short description or additional information for the notification (e.g. An artists name)
      * @param notificationMediaState The current media state for the expanded (big) notification
      */
     public void updateLockScreenInformation(String title, String subTitle, Bitmap mediaArtwork, EMNotification.NotificationMediaState notificationMediaState) {
-        //Updates the current media MetaData
+        updateLockScreenInformation(title, subTitle, mediaArtwork, notificationMediaState, PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN, 1.0f);
+    }
+
+    /**
+     * Sets the volatile information for the lock screen controls.  This should be called when the
+     * information or the playback changes (e.g. play, pause, seek); in between the progress is
+     * extrapolated from the position and speed.  Information that is already shown isn't re-sent.
+     *
+     * @param title The title to display for the notification (e.g. A song name)
+     * @param subTitle A short description or additional information for the notification (e.g. An artists name)
+     * @param notificationMediaState The current media state for the expanded (big) notification
+     * @param position The current playback position in milliseconds, or {@link PlaybackStateCompat#PLAYBACK_POSITION_UNKNOWN}
+     * @param playbackSpeed The speed the media plays at while playing (1.0 for normal)
+     */
+    public void updateLockScreenInformation(String title, String subTitle, Bitmap mediaArtwork, EMNotification.NotificationMediaState notificationMediaState,
+                                            long position, float playbackSpeed) {
+        updateMetadata(title, subTitle, mediaArtwork);
+        updatePlaybackState(notificationMediaState, position, playbackSpeed);
+
+        if (showLockScreen && !mediaSession.isActive()) {
+            mediaSession.setActive(true);
+        }
+    }
+
+    /**
+     * Updates the current media MetaData if it differs from the one already published
+     */
+    private void updateMetadata(String title, String subTitle, Bitmap mediaArtwork) {
+        int artworkGeneration = getGenerationId(mediaArtwork);
+        if (metadataPublished && TextUtils.equals(title, publishedTitle) && TextUtils.equals(subTitle, publishedSubTitle)
+                && mediaArtwork == publishedArtwork && artworkGeneration == publishedArtworkGeneration && appIconBitmap == publishedAppIcon) {
+            return;
+        }
+
         MediaMetadataCompat.Builder metaDataBuilder = new MediaMetadataCompat.Builder();
         metaDataBuilder.putBitmap(MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON, appIconBitmap);
         metaDataBuilder.putString(MediaMetadataCompat.METADATA_KEY_TITLE, title);
@@ -126,17 +194,65 @@ public class EMLockScreen {
 
         mediaSession.setMetadata(metaDataBuilder.build());
 
+        metadataPublished = true;
+        publishedTitle = title;
+        publishedSubTitle = subTitle;
+        publishedArtwork = mediaArtwork;
+        publishedArtworkGeneration = artworkGeneration;
+        publishedAppIcon = appIconBitmap;
+    }
+
+    /**
+     * Updates the available playback controls and the position, unless the published state
+     * already describes them (including a position the extrapolation would reach)
+     */
+    private void updatePlaybackState(EMNotification.NotificationMediaState notificationMediaState, long position, float playbackSpeed) {
+        int state = getPlaybackState(notificationMediaState.isPlaying());
+        long actions = getPlaybackOptions(notificationMediaState);
+        long updateTime = SystemClock.elapsedRealtime();
+
+        if (statePublished && state == publishedState && actions == publishedActions && playbackSpeed == publishedSpeed
+                && isPositionExpected(state, position, updateTime)) {
+            return;
+        }
 
-        //Updates the available playback controls
         PlaybackStateCompat.Builder playbackStateBuilder = new PlaybackStateCompat.Builder();
-        playbackStateBuilder.setActions(getPlaybackOptions(notificationMediaState));
-        playbackStateBuilder.setState(getPlaybackState(notificationMediaState.isPlaying()), PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN, 1.0f);
+        playbackStateBuilder.setActions(actions);
+        playbackStateBuilder.setState(state, position, playbackSpeed, updateTime);
 
         mediaSession.setPlaybackState(playbackStateBuilder.build());
 
-        if (showLockScreen && !mediaSession.isActive()) {
-            mediaSession.setActive(true);
+        statePublished = true;
+        publishedState = state;
+        publishedActions = actions;
+        publishedPosition = position;
+        publishedSpeed = playbackSpeed;
+        publishedUpdateTime = updateTime;
+    }
+
+    /**
+     * Determines if the position is where the published state would have extrapolated to
+     *
+     * @param state The current playback state
+     * @param position The current position in milliseconds
+     * @param updateTime The {@link SystemClock#elapsedRealtime()} the position was retrieved at
+     * @return True if the position doesn't need to be re-published
+     */
+    private boolean isPositionExpected(int state, long position, long updateTime) {
+        if (position == PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN || publishedPosition == PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN) {
+            return position == publishedPosition;
         }
+
+        long expectedPosition = publishedPosition;
+        if (state == PlaybackStateCompat.STATE_PLAYING) {
+            expectedPosition += (long) ((updateTime - publishedUpdateTime) * publishedSpeed);
+        }
+
+        return Math.abs(position - expectedPosition) <= POSITION_DRIFT_TOLERANCE;
+    }
+
+    private static int getGenerationId(Bitmap bitmap) {
+        return bitmap != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1 ? bitmap.getGenerationId() : 0;
     }
 
     private void setupMediaSession(MediaSessionCompat mediaSession, ComponentName componentName) {
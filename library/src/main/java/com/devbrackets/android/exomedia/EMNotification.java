@@ -25,6 +25,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
@@ -34,14 +36,36 @@ import android.widget.RemoteViews;
 /**
  * A class to help simplify notification creation and modification for
  * media playback applications.
+ * <p/>
+ * Every post sends the whole notification, including its images, to the system.  To keep
+ * that to a minimum, updates that don't change what the posted notification shows are
+ * skipped, and bursts of updates (e.g. a state change followed by the artwork loading) are
+ * coalesced in to a single post.  Updates must be made on the main thread.
  */
 public class EMNotification {
+    private static final long UPDATE_COALESCE_DELAY = 16; //About a frame
+
     private Context context;
     private NotificationManager notificationManager;
     private NotificationInfo notificationInfo = new NotificationInfo();
+    private PostedState postedState = new PostedState();
 
     private Class<? extends Service> mediaServiceClass;
-    private RemoteViews bigContent;
+    private PendingIntent[] actionIntents;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean updatePending = false;
+    private final Runnable updateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            postPendingUpdate();
+        }
+    };
+
+    private int notifyCount;
+    private int skippedUpdateCount;
+    private int coalescedUpdateCount;
+    private long bytesSaved;
 
     public EMNotification(Context context) {
         this.context = context;
@@ -66,6 +90,9 @@ public class EMNotification {
 
         //Remove the notification when disabling
         if (!enabled) {
+            handler.removeCallbacks(updateRunnable);
+            updatePending = false;
+            postedState.clear();
             notificationManager.cancel(notificationInfo.getNotificationId());
         }
     }
@@ -97,6 +124,14 @@ public class EMNotification {
      * @param mediaServiceClass The class for the service to notify of big notification actions
      */
     public void setNotificationBaseInformation(int notificationId, @DrawableRes int appIcon, @Nullable Class<? extends Service> mediaServiceClass) {
+        if (notificationId != notificationInfo.getNotificationId() || appIcon != notificationInfo.getAppIcon() || mediaServiceClass != this.mediaServiceClass) {
+            postedState.clear();
+        }
+
+        if (mediaServiceClass != this.mediaServiceClass) {
+            actionIntents = null;
+        }
+
         notificationInfo.setNotificationId(notificationId);
         notificationInfo.setAppIcon(appIcon);
         this.mediaServiceClass = mediaServiceClass;
@@ -117,7 +152,8 @@ public class EMNotification {
 
     /**
      * Sets the volatile information for the notification.  This information is expected to
-     * change frequently.
+     * change frequently.  The notification is posted shortly after, together with any other
+     * updates made in the mean time, and only if it differs from the one already posted.
      *
      * @param title The title to display for the notification (e.g. A song name)
      * @param content A short description or additional information for the notification (e.g. An artists name)
@@ -133,15 +169,69 @@ public class EMNotification {
         notificationInfo.setSecondaryImage(secondaryNotificationImage);
         notificationInfo.setMediaState(notificationMediaState);
 
-        if (notificationInfo.getShowNotifications()) {
-            notificationManager.notify(notificationInfo.getNotificationId(), getNotification(notificationInfo.getPendingIntent()));
+        if (!notificationInfo.getShowNotifications()) {
+            return;
         }
+
+        //The pending post will show this information as well
+        if (updatePending) {
+            coalescedUpdateCount++;
+            bytesSaved += getNotificationBitmapBytes();
+            return;
+        }
+
+        if (postedState.matches(notificationInfo)) {
+            skippedUpdateCount++;
+            bytesSaved += getNotificationBitmapBytes();
+            return;
+        }
+
+        updatePending = true;
+        handler.postDelayed(updateRunnable, UPDATE_COALESCE_DELAY);
+    }
+
+    /**
+     * @return The number of times the notification was posted with {@link NotificationManager#notify(int, Notification)}
+     */
+    public int getNotifyCount() {
+        return notifyCount;
+    }
+
+    /**
+     * @return The number of updates that weren't posted because the notification already showed them
+     */
+    public int getSkippedUpdateCount() {
+        return skippedUpdateCount;
+    }
+
+    /**
+     * @return The number of updates that were posted together with other updates
+     */
+    public int getCoalescedUpdateCount() {
+        return coalescedUpdateCount;
+    }
+
+    /**
+     * Retrieves an estimate of the bytes that weren't sent to the system because updates were
+     * skipped or coalesced.  Only the images are counted, since they make up most of a notification.
+     *
+     * @return The number of bytes saved
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    @Override
+    public String toString() {
+        return "notifies=" + notifyCount + " skipped=" + skippedUpdateCount + " coalesced=" + coalescedUpdateCount + " bytesSaved=" + bytesSaved;
     }
 
     /**
      * Returns a fully constructed notification to use when moving a service to the
      * foreground.  This should be called after the notification information is set with
      * {@link #setNotificationBaseInformation(int, int)} and {@link #updateNotificationInformation(String, String, Bitmap, Bitmap)}.
+     * The notification is expected to be posted (e.g. with {@link Service#startForeground(int, Notification)}),
+     * so updates that don't change it will be skipped.
      *
      * @param pendingIntent The pending intent to use when the notification itself is clicked
      * @return The constructed notification
@@ -149,6 +239,7 @@ public class EMNotification {
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     public Notification getNotification(@Nullable PendingIntent pendingIntent) {
         notificationInfo.setPendingIntent(pendingIntent);
+        postedState.set(notificationInfo);
 
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context);
         builder.setContentTitle(notificationInfo.getTitle());
@@ -177,20 +268,61 @@ public class EMNotification {
     }
 
     /**
-     * Creates the RemoteViews used for the expanded (big) notification
+     * Posts the updates made since the last post, unless they cancel each other out
+     */
+    private void postPendingUpdate() {
+        updatePending = false;
+        if (!notificationInfo.getShowNotifications()) {
+            return;
+        }
+
+        if (postedState.matches(notificationInfo)) {
+            skippedUpdateCount++;
+            bytesSaved += getNotificationBitmapBytes();
+            return;
+        }
+
+        notificationManager.notify(notificationInfo.getNotificationId(), getNotification(notificationInfo.getPendingIntent()));
+        notifyCount++;
+    }
+
+    /**
+     * @return The number of bytes of the images sent with a post of the current information
+     */
+    private long getNotificationBitmapBytes() {
+        //The large image is sent as the large icon, and again for the expanded notification
+        boolean hasBigContent = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && mediaServiceClass != null;
+        long bytes = getBitmapBytes(notificationInfo.getLargeImage());
+        if (hasBigContent) {
+            bytes += getBitmapBytes(notificationInfo.getLargeImage()) + getBitmapBytes(notificationInfo.getSecondaryImage());
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Creates the RemoteViews used for the expanded (big) notification.  These are created for
+     * every post, since RemoteViews accumulate their actions and keep every image they were given.
      *
      * @return The resulting RemoteViews
      */
     private RemoteViews getBigNotification() {
-        if (bigContent == null) {
-            bigContent = new RemoteViews(context.getPackageName(), R.layout.exomedia_big_notification_content);
-
-            bigContent.setOnClickPendingIntent(R.id.exomedia_notification_close, createPendingIntent(EMRemoteActions.ACTION_STOP, mediaServiceClass));
-            bigContent.setOnClickPendingIntent(R.id.exomedia_notification_playpause, createPendingIntent(EMRemoteActions.ACTION_PLAY_PAUSE, mediaServiceClass));
-            bigContent.setOnClickPendingIntent(R.id.exomedia_notification_next, createPendingIntent(EMRemoteActions.ACTION_NEXT, mediaServiceClass));
-            bigContent.setOnClickPendingIntent(R.id.exomedia_notification_prev, createPendingIntent(EMRemoteActions.ACTION_PREVIOUS, mediaServiceClass));
+        //Creating the PendingIntents is a call to the system, so they are only created once
+        if (actionIntents == null) {
+            actionIntents = new PendingIntent[] {
+                    createPendingIntent(EMRemoteActions.ACTION_STOP, mediaServiceClass),
+                    createPendingIntent(EMRemoteActions.ACTION_PLAY_PAUSE, mediaServiceClass),
+                    createPendingIntent(EMRemoteActions.ACTION_NEXT, mediaServiceClass),
+                    createPendingIntent(EMRemoteActions.ACTION_PREVIOUS, mediaServiceClass)
+            };
         }
 
+        RemoteViews bigContent = new RemoteViews(context.getPackageName(), R.layout.exomedia_big_notification_content);
+        bigContent.setOnClickPendingIntent(R.id.exomedia_notification_close, actionIntents[0]);
+        bigContent.setOnClickPendingIntent(R.id.exomedia_notification_playpause, actionIntents[1]);
+        bigContent.setOnClickPendingIntent(R.id.exomedia_notification_next, actionIntents[2]);
+        bigContent.setOnClickPendingIntent(R.id.exomedia_notification_prev, actionIntents[3]);
+
         bigContent.setTextViewText(R.id.exomedia_notification_title, notificationInfo.getTitle());
         bigContent.setTextViewText(R.id.exomedia_notification_content_text, notificationInfo.getContent());
         bigContent.setBitmap(R.id.exomedia_notification_large_image, "setImageBitmap", notificationInfo.getLargeImage());
@@ -237,6 +369,71 @@ public class EMNotification {
         return PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
     }
 
+    private static long getBitmapBytes(@Nullable Bitmap bitmap) {
+        return bitmap == null ? 0 : (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static int getGenerationId(@Nullable Bitmap bitmap) {
+        return bitmap != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1 ? bitmap.getGenerationId() : 0;
+    }
+
+    /**
+     * What the posted notification shows, to compare updates against.  Images are compared
+     * by instance and generation id, so an image that is modified in place is still noticed.
+     * The title and content of the info are never null, so they are compared without TextUtils,
+     * which isn't available to the JVM tests.
+     */
+    static class PostedState {
+        private boolean posted;
+        private String title;
+        private String content;
+        private Bitmap largeImage;
+        private int largeImageGeneration;
+        private Bitmap secondaryImage;
+        private int secondaryImageGeneration;
+        private PendingIntent pendingIntent;
+        private boolean hasMediaState;
+        private boolean playing;
+        private boolean previousEnabled;
+        private boolean nextEnabled;
+
+        public boolean matches(NotificationInfo info) {
+            NotificationMediaState mediaState = info.getMediaState();
+            return posted
+                    && info.getTitle().equals(title)
+                    && info.getContent().equals(content)
+                    && largeImage == info.getLargeImage() && largeImageGeneration == getGenerationId(info.getLargeImage())
+                    && secondaryImage == info.getSecondaryImage() && secondaryImageGeneration == getGenerationId(info.getSecondaryImage())
+                    && pendingIntent == info.getPendingIntent()
+                    && hasMediaState == (mediaState != null)
+                    && (mediaState == null || (playing == mediaState.isPlaying() && previousEnabled == mediaState.isPreviousEnabled()
+                            && nextEnabled == mediaState.isNextEnabled()));
+        }
+
+        public void set(NotificationInfo info) {
+            NotificationMediaState mediaState = info.getMediaState();
+            posted = true;
+            title = info.getTitle();
+            content = info.getContent();
+            largeImage = info.getLargeImage();
+            largeImageGeneration = getGenerationId(largeImage);
+            secondaryImage = info.getSecondaryImage();
+            secondaryImageGeneration = getGenerationId(secondaryImage);
+            pendingIntent = info.getPendingIntent();
+            hasMediaState = mediaState != null;
+            playing = mediaState != null && mediaState.isPlaying();
+            previousEnabled = mediaState != null && mediaState.isPreviousEnabled();
+            nextEnabled = mediaState != null && mediaState.isNextEnabled();
+        }
+
+        public void clear() {
+            posted = false;
+            largeImage = null;
+            secondaryImage = null;
+            pendingIntent = null;
+        }
+    }
+
     public static class NotificationMediaState {
         private boolean isPlaying;
         private boolean isPreviousEnabled;
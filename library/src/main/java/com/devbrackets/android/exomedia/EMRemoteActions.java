@@ -33,6 +33,7 @@ public class EMRemoteActions {
     public static final String ACTION_EXTRA_SEEK_POSITION = "remote_action_seek_position";
     public static final String ACTION_EXTRA_ALLOWED_TYPE = "remote_action_allowed_type";
     public static final String ACTION_EXTRA_START_PAUSED = "remote_action_start_paused";
+    public static final String ACTION_EXTRA_TRACE_ID = "remote_action_trace_id";
 
     private EMRemoteActions() {
         //Purposefully left blank
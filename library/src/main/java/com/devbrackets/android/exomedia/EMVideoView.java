@@ -37,6 +37,7 @@ import android.widget.VideoView;
 
 import com.devbrackets.android.exomedia.builder.HlsRenderBuilder;
 import com.devbrackets.android.exomedia.builder.RenderBuilder;
+import com.devbrackets.android.exomedia.event.EMEventDispatcher;
 import com.devbrackets.android.exomedia.event.EMMediaProgressEvent;
 import com.devbrackets.android.exomedia.event.EMVideoViewClickedEvent;
 import com.devbrackets.android.exomedia.exoplayer.EMExoPlayer;
@@ -44,6 +45,7 @@ import com.devbrackets.android.exomedia.listener.EMProgressCallback;
 import com.devbrackets.android.exomedia.listener.EMVideoViewControlsCallback;
 import com.devbrackets.android.exomedia.listener.ExoPlayerListener;
 import com.devbrackets.android.exomedia.util.EMDeviceUtil;
+import com.devbrackets.android.exomedia.util.MediaProgressHolder;
 import com.devbrackets.android.exomedia.util.MediaUtil;
 import com.devbrackets.android.exomedia.util.Repeater;
 import com.devbrackets.android.exomedia.util.StopWatch;
@@ -111,6 +113,8 @@ public class EMVideoView extends RelativeLayout implements AudioCapabilitiesRece
 
     private Uri videoUri;
     private EMMediaProgressEvent currentMediaProgressEvent = new EMMediaProgressEvent(0, 0, 0);
+    private final MediaProgressHolder progressHolder = new MediaProgressHolder();
+    private EMEventDispatcher.Channel<EMMediaProgressEvent> progressChannel;
 
     public EMVideoView(Context context) {
         super(context);
@@ -140,6 +144,7 @@ public class EMVideoView extends RelativeLayout implements AudioCapabilitiesRece
             @Override
             public void onRepeat() {
                 currentMediaProgressEvent.update(getCurrentPosition(), getBufferPercentage(), getDuration());
+                progressHolder.publish(currentMediaProgressEvent);
 
                 if (defaultControls != null) {
                     defaultControls.setProgressEvent(currentMediaProgressEvent);
@@ -152,6 +157,10 @@ public class EMVideoView extends RelativeLayout implements AudioCapabilitiesRece
                 if (bus != null) {
                     bus.post(currentMediaProgressEvent);
                 }
+
+                if (progressChannel != null) {
+                    progressChannel.post(currentMediaProgressEvent);
+                }
             }
         });
 
@@ -403,6 +412,17 @@ public class EMVideoView extends RelativeLayout implements AudioCapabilitiesRece
         }
     }
 
+    /**
+     * Sets the dispatcher to post the progress and playback events to, in addition to the bus.
+     * Unlike the bus it delivers the progress events without reflection or allocations.
+     *
+     * @param eventDispatcher The dispatcher or null
+     */
+    public void setEventDispatcher(@Nullable EMEventDispatcher eventDispatcher) {
+        progressChannel = eventDispatcher != null ? eventDispatcher.getChannel(EMMediaProgressEvent.class) : null;
+        listenerMux.setEventDispatcher(eventDispatcher);
+    }
+
     /**
      * Starts the progress poll.  If you have already called {@link #setBus(com.squareup.otto.Bus)} then
      * you should use the {@link #startProgressPoll()} method instead.
@@ -448,7 +468,20 @@ public class EMVideoView extends RelativeLayout implements AudioCapabilitiesRece
 
     @Produce
     public EMMediaProgressEvent produceMediaProgressEvent() {
-        return currentMediaProgressEvent;
+        EMMediaProgressEvent snapshot = progressHolder.getSnapshot();
+        return snapshot != null ? snapshot : EMMediaProgressEvent.obtain(currentMediaProgressEvent);
+    }
+
+    /**
+     * Copies the latest progress reported by the progress poll in to the event.  Unlike the
+     * event passed to the progress callbacks, which is re-used for every update, this can be
+     * called from any thread and the event stays unchanged until the next call.
+     *
+     * @param event The event to update with the latest progress
+     * @return True if the event was updated, false if no progress has been reported yet
+     */
+    public boolean readProgress(EMMediaProgressEvent event) {
+        return progressHolder.read(event);
     }
 
     /***********************************
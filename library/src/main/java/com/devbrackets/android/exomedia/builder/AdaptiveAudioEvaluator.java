@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.builder;
+
+import com.google.android.exoplayer.chunk.Chunk;
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.chunk.MediaChunk;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+
+import java.util.List;
+
+/**
+ * A {@link FormatEvaluator} for switching between the audio representations of a
+ * DASH adaptation set.  The highest bitrate that fits in the measured bandwidth is chosen,
+ * limited to the configured minimum and maximum bitrate.  Switches only take effect for the
+ * next segment (already buffered segments are never discarded), and how much is buffered
+ * decides whether a switch is worth making:
+ * <ul>
+ *     <li>The quality is only increased once enough is buffered to absorb a misjudged estimate</li>
+ *     <li>The quality is only decreased while the buffer is not comfortably full</li>
+ * </ul>
+ */
+public class AdaptiveAudioEvaluator implements FormatEvaluator {
+    public static final int NO_LIMIT = -1;
+
+    private static final int DEFAULT_MAX_INITIAL_BITRATE = 128000;
+    private static final float BANDWIDTH_FRACTION = 0.75f;
+    private static final long MIN_BUFFER_FOR_QUALITY_INCREASE_US = 10000000;
+    private static final long MAX_BUFFER_FOR_QUALITY_DECREASE_US = 25000000;
+
+    private final BandwidthMeter bandwidthMeter;
+    private final int minBitrate;
+    private final int maxBitrate;
+
+    /**
+     * @param bandwidthMeter The meter that is measuring the throughput of the chunk downloads
+     */
+    public AdaptiveAudioEvaluator(BandwidthMeter bandwidthMeter) {
+        this(bandwidthMeter, NO_LIMIT, NO_LIMIT);
+    }
+
+    /**
+     * @param bandwidthMeter The meter that is measuring the throughput of the chunk downloads
+     * @param minBitrate The lowest bitrate to select, or {@link #NO_LIMIT}
+     * @param maxBitrate The highest bitrate to select, or {@link #NO_LIMIT}
+     */
+    public AdaptiveAudioEvaluator(BandwidthMeter bandwidthMeter, int minBitrate, int maxBitrate) {
+        this.bandwidthMeter = bandwidthMeter;
+        this.minBitrate = minBitrate;
+        this.maxBitrate = maxBitrate;
+    }
+
+    @Override
+    public void enable() {
+        //Purposefully left blank
+    }
+
+    @Override
+    public void disable() {
+        //Purposefully left blank
+    }
+
+    @Override
+    public void evaluate(List<? extends MediaChunk> queue, long playbackPositionUs, Format[] formats, Evaluation evaluation) {
+        Format current = evaluation.format;
+        Format ideal = determineIdealFormat(formats);
+        if (current == null) {
+            evaluation.format = ideal;
+            return;
+        }
+
+        long bufferedDurationUs = queue.isEmpty() ? 0 : queue.get(queue.size() - 1).endTimeUs - playbackPositionUs;
+        boolean isIncrease = ideal.bitrate > current.bitrate;
+        if (isIncrease && bufferedDurationUs < MIN_BUFFER_FOR_QUALITY_INCREASE_US) {
+            //Not enough buffered to risk a higher bitrate yet
+            return;
+        }
+
+        if (!isIncrease && bufferedDurationUs >= MAX_BUFFER_FOR_QUALITY_DECREASE_US) {
+            //Plenty is buffered, so there is no need to lower the quality yet
+            return;
+        }
+
+        if (ideal != current) {
+            evaluation.format = ideal;
+            evaluation.trigger = Chunk.TRIGGER_ADAPTIVE;
+        }
+    }
+
+    /**
+     * Determines the best format for the current bandwidth estimate
+     *
+     * @param formats The available formats, ordered by decreasing bitrate
+     * @return The ideal format
+     */
+    private Format determineIdealFormat(Format[] formats) {
+        long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+        long effectiveBitrate = bitrateEstimate == BandwidthMeter.NO_ESTIMATE ? DEFAULT_MAX_INITIAL_BITRATE : (long) (bitrateEstimate * BANDWIDTH_FRACTION);
+
+        Format lowestAllowed = null;
+        for (Format format : formats) {
+            if (!isAllowed(format)) {
+                continue;
+            }
+
+            if (format.bitrate <= effectiveBitrate) {
+                return format;
+            }
+            lowestAllowed = format;
+        }
+
+        //None fit the bandwidth, so use the lowest allowed.  If the limits exclude everything use the lowest there is
+        return lowestAllowed != null ? lowestAllowed : formats[formats.length - 1];
+    }
+
+    private boolean isAllowed(Format format) {
+        return (minBitrate == NO_LIMIT || format.bitrate >= minBitrate) && (maxBitrate == NO_LIMIT || format.bitrate <= maxBitrate);
+    }
+}
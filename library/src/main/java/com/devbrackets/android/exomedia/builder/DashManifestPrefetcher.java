@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.builder;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescriptionParser;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.google.android.exoplayer.util.ManifestFetcher;
+import com.google.android.exoplayer.util.ManifestFetcher.ManifestCallback;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Starts fetching and parsing a DASH manifest as soon as its url is known, before the
+ * player has been created.  The {@link DashRendererBuilder} for the same url then
+ * {@link #take(String) takes} the prefetch and either uses the already parsed manifest or
+ * joins the load that is still in flight, instead of starting its own.
+ * <p/>
+ * {@link #prefetch(Context, String, String)} may be called from any thread; the manifest
+ * is delivered on the main thread.
+ */
+public final class DashManifestPrefetcher {
+    private static final int MAX_PREFETCHES = 4;
+
+    private static final Map<String, Prefetch> prefetches = new LinkedHashMap<String, Prefetch>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Prefetch> eldest) {
+            return size() > MAX_PREFETCHES;
+        }
+    };
+
+    private DashManifestPrefetcher() {
+    }
+
+    /**
+     * Starts loading the manifest in the background.  If the url is already being
+     * prefetched, or its manifest is in the {@link DashRendererBuilder#getManifestCache() cache},
+     * this does nothing.
+     *
+     * @param context The context to use for the data source
+     * @param userAgent The user agent to fetch the manifest with
+     * @param url The url of the DASH manifest
+     */
+    public static void prefetch(Context context, String userAgent, String url) {
+        if (DashRendererBuilder.getManifestCache().contains(url)) {
+            return;
+        }
+
+        Prefetch prefetch;
+        synchronized (prefetches) {
+            if (prefetches.containsKey(url)) {
+                return;
+            }
+
+            prefetch = new Prefetch(context.getApplicationContext(), userAgent, url);
+            prefetches.put(url, prefetch);
+        }
+
+        prefetch.start();
+    }
+
+    /**
+     * Removes and returns the prefetch for the url
+     *
+     * @param url The url of the DASH manifest
+     * @return The prefetch or null if the url was not prefetched
+     */
+    @Nullable
+    static Prefetch take(String url) {
+        synchronized (prefetches) {
+            return prefetches.remove(url);
+        }
+    }
+
+    /**
+     * A single manifest load.  Other than {@link #start()} everything is only
+     * touched on the main thread.
+     */
+    static class Prefetch implements ManifestCallback<MediaPresentationDescription> {
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+        private final UriDataSource dataSource;
+        private final ManifestFetcher<MediaPresentationDescription> fetcher;
+
+        private MediaPresentationDescription manifest;
+        private IOException error;
+        private ManifestCallback<MediaPresentationDescription> waitingCallback;
+
+        private Prefetch(Context context, String userAgent, String url) {
+            dataSource = new DefaultUriDataSource(context, userAgent);
+            fetcher = new ManifestFetcher<>(url, dataSource, new MediaPresentationDescriptionParser());
+        }
+
+        private void start() {
+            fetcher.singleLoad(Looper.getMainLooper(), this);
+        }
+
+        UriDataSource getDataSource() {
+            return dataSource;
+        }
+
+        /**
+         * The fetcher performing the load, which holds the manifest once the load completes
+         */
+        ManifestFetcher<MediaPresentationDescription> getFetcher() {
+            return fetcher;
+        }
+
+        /**
+         * Informs the callback once the manifest has been loaded, or right away (but still
+         * asynchronously) if it already has been.  Must be called on the main thread.
+         */
+        void join(final ManifestCallback<MediaPresentationDescription> callback) {
+            if (manifest == null && error == null) {
+                waitingCallback = callback;
+                return;
+            }
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(callback);
+                }
+            });
+        }
+
+        @Override
+        public void onSingleManifest(MediaPresentationDescription manifest) {
+            this.manifest = manifest;
+            if (waitingCallback != null) {
+                deliver(waitingCallback);
+            }
+        }
+
+        @Override
+        public void onSingleManifestError(IOException e) {
+            error = e;
+            if (waitingCallback != null) {
+                deliver(waitingCallback);
+            }
+        }
+
+        private void deliver(ManifestCallback<MediaPresentationDescription> callback) {
+            waitingCallback = null;
+            if (manifest != null) {
+                callback.onSingleManifest(manifest);
+            } else {
+                callback.onSingleManifestError(error);
+            }
+        }
+    }
+}
@@ -21,10 +21,11 @@ import android.media.MediaCodec;
 import android.os.Handler;
 import android.util.Log;
 
+import com.devbrackets.android.exomedia.BufferPolicy;
 import com.devbrackets.android.exomedia.exoplayer.EMExoPlayer;
 import com.devbrackets.android.exomedia.listener.RendererBuilderCallback;
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
 import com.google.android.exoplayer.C;
-import com.google.android.exoplayer.DefaultLoadControl;
 import com.google.android.exoplayer.LoadControl;
 import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
 import com.google.android.exoplayer.MediaCodecUtil.DecoderQueryException;
@@ -54,7 +55,6 @@ import com.google.android.exoplayer.text.TextTrackRenderer;
 import com.google.android.exoplayer.text.ttml.TtmlParser;
 import com.google.android.exoplayer.text.webvtt.WebvttParser;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
 import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 import com.google.android.exoplayer.upstream.UriDataSource;
@@ -79,6 +79,12 @@ import java.util.List;
     * Change references to DemoPlayer to com.devbrakets.android.exomedia.exoplayer.EMExoPlayer
         -change type
         -change the name of constants in buildRenderers()
+    * Uses the manifest from com.devbrackets.android.exomedia.builder.DashManifestPrefetcher when the url was prefetched
+    * Supports the audio only mode from RenderBuilder, which skips the video and text adaptation sets
+    * The first audio track adapts between the audio representations using a com.devbrackets.android.exomedia.builder.AdaptiveAudioEvaluator
+    * Buffer sizes come from the com.devbrackets.android.exomedia.BufferPolicy instead of constants
+    * The media (not the manifest) is loaded through the RenderBuilder's MediaCache, if one is set
+    * Loaded manifests are kept in a com.devbrackets.android.exomedia.builder.ManifestCache and reused while they are valid
      */
 
 public class DashRendererBuilder extends RenderBuilder implements
@@ -86,11 +92,17 @@ public class DashRendererBuilder extends RenderBuilder implements
 
     private static final String TAG = "DashRendererBuilder";
 
-    private static final int BUFFER_SEGMENT_SIZE = 64 * 1024;
-    private static final int VIDEO_BUFFER_SEGMENTS = 200;
-    private static final int AUDIO_BUFFER_SEGMENTS = 60;
     private static final int TEXT_BUFFER_SEGMENTS = 2;
     private static final int LIVE_EDGE_LATENCY_MS = 30000;
+    private static final int MAX_CACHED_MANIFESTS = 16;
+    private static final String ADAPTIVE_AUDIO_TRACK_NAME = "Auto";
+
+    /**
+     * The fetchers are cached instead of the manifests themselves because the
+     * DashChunkSources get the manifest (and its refreshes) from the fetcher
+     */
+    private static final ManifestCache<ManifestFetcher<MediaPresentationDescription>> manifestCache =
+            new ManifestCache<>(MAX_CACHED_MANIFESTS);
 
     private static final int SECURITY_LEVEL_UNKNOWN = -1;
     private static final int SECURITY_LEVEL_1 = 1;
@@ -118,15 +130,68 @@ public class DashRendererBuilder extends RenderBuilder implements
     private MediaPresentationDescription manifest;
     private long elapsedRealtimeOffset;
 
+    private int minAudioBitrate = AdaptiveAudioEvaluator.NO_LIMIT;
+    private int maxAudioBitrate = AdaptiveAudioEvaluator.NO_LIMIT;
+
     public DashRendererBuilder(Context context, String userAgent, String url, AudioCapabilities audioCapabilities) {
         super(context, userAgent, url);
         this.audioCapabilities = audioCapabilities;
     }
 
+    /**
+     * Limits the bitrates the adaptive audio track will switch between.  If no audio
+     * representation is within the limits the lowest one is used.
+     *
+     * @param minBitrate The lowest bitrate in bits per second, or {@link AdaptiveAudioEvaluator#NO_LIMIT}
+     * @param maxBitrate The highest bitrate in bits per second, or {@link AdaptiveAudioEvaluator#NO_LIMIT}
+     */
+    public void setAudioBitrateLimits(int minBitrate, int maxBitrate) {
+        this.minAudioBitrate = minBitrate;
+        this.maxAudioBitrate = maxBitrate;
+    }
+
+    /**
+     * Retrieves the cache of loaded DASH manifests shared by all DashRendererBuilders
+     *
+     * @return The manifest cache
+     */
+    public static ManifestCache<ManifestFetcher<MediaPresentationDescription>> getManifestCache() {
+        return manifestCache;
+    }
+
+    @Override
+    public boolean isLoadingReported() {
+        return true;
+    }
+
     @Override
     public void buildRenderers(EMExoPlayer player, RendererBuilderCallback callback) {
         this.player = player;
         this.callback = callback;
+
+        //Reuse the manifest if this uri has already been loaded
+        final ManifestFetcher<MediaPresentationDescription> cachedFetcher = manifestCache.get(uri);
+        if (cachedFetcher != null) {
+            manifestDataSource = new DefaultUriDataSource(context, userAgent);
+            manifestFetcher = cachedFetcher;
+            player.getMainHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    onSingleManifest(cachedFetcher.getManifest());
+                }
+            });
+            return;
+        }
+
+        //Use the manifest that was prefetched while the player was being set up, if any
+        DashManifestPrefetcher.Prefetch prefetch = DashManifestPrefetcher.take(uri);
+        if (prefetch != null) {
+            manifestDataSource = prefetch.getDataSource();
+            manifestFetcher = prefetch.getFetcher();
+            prefetch.join(this);
+            return;
+        }
+
         MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
         manifestDataSource = new DefaultUriDataSource(context, userAgent);
         manifestFetcher = new ManifestFetcher<>(uri, manifestDataSource, parser);
@@ -135,7 +200,9 @@ public class DashRendererBuilder extends RenderBuilder implements
 
     @Override
     public void onSingleManifest(MediaPresentationDescription manifest) {
+        PlaybackTracer.mark(player.getPlaybackTrace(), PlaybackTracer.Phase.MANIFEST_FETCH);
         this.manifest = manifest;
+        manifestCache.put(uri, manifestFetcher, getExpiry(manifest));
         if (manifest.dynamic && manifest.utcTiming != null) {
             UtcTimingElementResolver.resolveTimingElement(manifestDataSource, manifest.utcTiming,
                     manifestFetcher.getManifestLoadTimestamp(), this);
@@ -165,11 +232,12 @@ public class DashRendererBuilder extends RenderBuilder implements
     private void buildRenderers() {
         Period period = manifest.periods.get(0);
         Handler mainHandler = player.getMainHandler();
-        LoadControl loadControl = new DefaultLoadControl(new DefaultAllocator(BUFFER_SEGMENT_SIZE));
+        BufferPolicy bufferPolicy = getBufferPolicy(player);
+        LoadControl loadControl = createLoadControl(bufferPolicy, player);
         DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter(mainHandler, player);
 
         boolean hasContentProtection = false;
-        int videoAdaptationSetIndex = period.getAdaptationSetIndex(AdaptationSet.TYPE_VIDEO);
+        int videoAdaptationSetIndex = audioOnly ? -1 : period.getAdaptationSetIndex(AdaptationSet.TYPE_VIDEO);
         int audioAdaptationSetIndex = period.getAdaptationSetIndex(AdaptationSet.TYPE_AUDIO);
         AdaptationSet videoAdaptationSet = null;
         AdaptationSet audioAdaptationSet = null;
@@ -184,7 +252,7 @@ public class DashRendererBuilder extends RenderBuilder implements
 
         // Fail if we have neither video or audio.
         if (videoAdaptationSet == null && audioAdaptationSet == null) {
-            callback.onRenderersError(new IllegalStateException("No video or audio adaptation sets"));
+            callback.onRenderersError(new IllegalStateException(audioOnly ? "No audio adaptation set" : "No video or audio adaptation sets"));
             return;
         }
 
@@ -214,13 +282,13 @@ public class DashRendererBuilder extends RenderBuilder implements
         if (videoRepresentationIndices == null || videoRepresentationIndices.length == 0) {
             videoRenderer = null;
         } else {
-            DataSource videoDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+            DataSource videoDataSource = createMediaDataSource(new DefaultUriDataSource(context, bandwidthMeter, userAgent));
             ChunkSource videoChunkSource = new DashChunkSource(manifestFetcher,
                     videoAdaptationSetIndex, videoRepresentationIndices, videoDataSource,
                     new AdaptiveEvaluator(bandwidthMeter), LIVE_EDGE_LATENCY_MS, elapsedRealtimeOffset,
                     mainHandler, player);
             ChunkSampleSource videoSampleSource = new ChunkSampleSource(videoChunkSource, loadControl,
-                    VIDEO_BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, true, mainHandler, player,
+                    bufferPolicy.getVideoBufferSize(), true, mainHandler, player,
                     EMExoPlayer.RENDER_VIDEO_INDEX);
             videoRenderer = new MediaCodecVideoTrackRenderer(videoSampleSource, drmSessionManager, true,
                     MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 5000, null, mainHandler, player, 50);
@@ -230,9 +298,10 @@ public class DashRendererBuilder extends RenderBuilder implements
         List<ChunkSource> audioChunkSourceList = new ArrayList<>();
         List<String> audioTrackNameList = new ArrayList<>();
         if (audioAdaptationSet != null) {
-            DataSource audioDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+            DataSource audioDataSource = createMediaDataSource(new DefaultUriDataSource(context, bandwidthMeter, userAgent));
             FormatEvaluator audioEvaluator = new FormatEvaluator.FixedEvaluator();
             List<Representation> audioRepresentations = audioAdaptationSet.representations;
+            List<Integer> audioRepresentationIndexList = new ArrayList<>();
             List<String> codecs = new ArrayList<>();
             for (int i = 0; i < audioRepresentations.size(); i++) {
                 Format format = audioRepresentations.get(i).format;
@@ -241,9 +310,11 @@ public class DashRendererBuilder extends RenderBuilder implements
                 audioChunkSourceList.add(new DashChunkSource(manifestFetcher, audioAdaptationSetIndex,
                         new int[]{i}, audioDataSource, audioEvaluator, LIVE_EDGE_LATENCY_MS,
                         elapsedRealtimeOffset, mainHandler, player));
+                audioRepresentationIndexList.add(i);
                 codecs.add(format.codecs);
             }
 
+            String passthroughCodec = null;
             if (audioCapabilities != null) {
                 // If there are any passthrough audio encodings available, select the highest priority
                 // supported format (e.g. E-AC-3) and remove other tracks.
@@ -254,15 +325,27 @@ public class DashRendererBuilder extends RenderBuilder implements
                         continue;
                     }
 
+                    passthroughCodec = codec;
                     for (int j = audioRepresentations.size() - 1; j >= 0; j--) {
                         if (!audioRepresentations.get(j).format.codecs.equals(codec)) {
                             audioTrackNameList.remove(j);
                             audioChunkSourceList.remove(j);
+                            audioRepresentationIndexList.remove(j);
                         }
                     }
                     break;
                 }
             }
+
+            // Add an adaptive track in front of the fixed ones so that it is selected by default.
+            int[] adaptiveIndices = getAdaptiveAudioIndices(audioRepresentations, audioRepresentationIndexList, passthroughCodec);
+            if (adaptiveIndices.length > 1) {
+                FormatEvaluator adaptiveEvaluator = new AdaptiveAudioEvaluator(bandwidthMeter, minAudioBitrate, maxAudioBitrate);
+                audioTrackNameList.add(0, ADAPTIVE_AUDIO_TRACK_NAME);
+                audioChunkSourceList.add(0, new DashChunkSource(manifestFetcher, audioAdaptationSetIndex,
+                        adaptiveIndices, audioDataSource, adaptiveEvaluator, LIVE_EDGE_LATENCY_MS,
+                        elapsedRealtimeOffset, mainHandler, player));
+            }
         }
 
         // Build the audio renderer.
@@ -278,18 +361,18 @@ public class DashRendererBuilder extends RenderBuilder implements
             audioTrackNameList.toArray(audioTrackNames);
             audioChunkSource = new MultiTrackChunkSource(audioChunkSourceList);
             SampleSource audioSampleSource = new ChunkSampleSource(audioChunkSource, loadControl,
-                    AUDIO_BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, true, mainHandler, player,
+                    bufferPolicy.getAudioBufferSize(), true, mainHandler, player,
                     EMExoPlayer.RENDER_AUDIO_INDEX);
             audioRenderer = new MediaCodecAudioTrackRenderer(audioSampleSource, drmSessionManager, true,
                     mainHandler, player);
         }
 
-        // Build the text chunk sources.
-        DataSource textDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+        // Build the text chunk sources, unless only the audio is wanted.
+        DataSource textDataSource = createMediaDataSource(new DefaultUriDataSource(context, bandwidthMeter, userAgent));
         FormatEvaluator textEvaluator = new FormatEvaluator.FixedEvaluator();
         List<ChunkSource> textChunkSourceList = new ArrayList<>();
         List<String> textTrackNameList = new ArrayList<>();
-        for (int i = 0; i < period.adaptationSets.size(); i++) {
+        for (int i = 0; !audioOnly && i < period.adaptationSets.size(); i++) {
             AdaptationSet adaptationSet = period.adaptationSets.get(i);
             if (adaptationSet.type == AdaptationSet.TYPE_TEXT) {
                 List<Representation> representations = adaptationSet.representations;
@@ -316,7 +399,7 @@ public class DashRendererBuilder extends RenderBuilder implements
             textTrackNameList.toArray(textTrackNames);
             textChunkSource = new MultiTrackChunkSource(textChunkSourceList);
             SampleSource textSampleSource = new ChunkSampleSource(textChunkSource, loadControl,
-                    TEXT_BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, true, mainHandler, player,
+                    TEXT_BUFFER_SEGMENTS * bufferPolicy.getAllocatorChunkSize(), true, mainHandler, player,
                     EMExoPlayer.RENDER_CLOSED_CAPTION_INDEX);
             textRenderer = new TextTrackRenderer(textSampleSource, player, mainHandler.getLooper(),
                     new TtmlParser(), new WebvttParser());
@@ -336,9 +419,54 @@ public class DashRendererBuilder extends RenderBuilder implements
         renderers[EMExoPlayer.RENDER_VIDEO_INDEX] = videoRenderer;
         renderers[EMExoPlayer.RENDER_AUDIO_INDEX] = audioRenderer;
         renderers[EMExoPlayer.RENDER_CLOSED_CAPTION_INDEX] = textRenderer;
+        PlaybackTracer.mark(player.getPlaybackTrace(), PlaybackTracer.Phase.BUILD_RENDERERS);
         callback.onRenderers(trackNames, multiTrackChunkSources, renderers);
     }
 
+    /**
+     * Determines which of the audio representations the adaptive track can switch between.
+     * Those are the ones left after the passthrough filtering, without any passthrough
+     * codecs the device can't play.
+     */
+    private static int[] getAdaptiveAudioIndices(List<Representation> representations, List<Integer> indices, String passthroughCodec) {
+        List<Integer> adaptiveIndices = new ArrayList<>();
+        for (int index : indices) {
+            String codec = representations.get(index).format.codecs;
+            if (passthroughCodec != null || !isPassthroughCodec(codec)) {
+                adaptiveIndices.add(index);
+            }
+        }
+
+        int[] result = new int[adaptiveIndices.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = adaptiveIndices.get(i);
+        }
+
+        return result;
+    }
+
+    private static boolean isPassthroughCodec(String codec) {
+        for (String passthroughCodec : PASSTHROUGH_CODECS_PRIORITY) {
+            if (passthroughCodec.equals(codec)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Static manifests are valid for the whole session, dynamic ones only until
+     * they should be refreshed
+     */
+    private long getExpiry(MediaPresentationDescription manifest) {
+        if (!manifest.dynamic) {
+            return ManifestCache.NO_EXPIRY;
+        }
+
+        return manifest.minUpdatePeriod > 0 ? manifestFetcher.getManifestLoadTimestamp() + manifest.minUpdatePeriod : 0;
+    }
+
     private static int getWidevineSecurityLevel(StreamingDrmSessionManager sessionManager) {
         String securityLevelProperty = sessionManager.getPropertyString("securityLevel");
         return securityLevelProperty.equals("L1") ? SECURITY_LEVEL_1 : securityLevelProperty
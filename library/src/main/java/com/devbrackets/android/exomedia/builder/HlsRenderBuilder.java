@@ -20,10 +20,12 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.media.MediaCodec;
 import android.os.Build;
+import android.os.SystemClock;
 
+import com.devbrackets.android.exomedia.BufferPolicy;
 import com.devbrackets.android.exomedia.exoplayer.EMExoPlayer;
 import com.devbrackets.android.exomedia.listener.RendererBuilderCallback;
-import com.google.android.exoplayer.DefaultLoadControl;
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
 import com.google.android.exoplayer.LoadControl;
 import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
 import com.google.android.exoplayer.MediaCodecUtil;
@@ -33,13 +35,13 @@ import com.google.android.exoplayer.audio.AudioCapabilities;
 import com.google.android.exoplayer.chunk.VideoFormatSelectorUtil;
 import com.google.android.exoplayer.hls.HlsChunkSource;
 import com.google.android.exoplayer.hls.HlsMasterPlaylist;
+import com.google.android.exoplayer.hls.HlsMediaPlaylist;
 import com.google.android.exoplayer.hls.HlsPlaylist;
 import com.google.android.exoplayer.hls.HlsPlaylistParser;
 import com.google.android.exoplayer.hls.HlsSampleSource;
 import com.google.android.exoplayer.metadata.Id3Parser;
 import com.google.android.exoplayer.metadata.MetadataTrackRenderer;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
 import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 import com.google.android.exoplayer.util.ManifestFetcher;
@@ -54,8 +56,9 @@ import java.util.Map;
  */
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
 public class HlsRenderBuilder extends RenderBuilder implements ManifestCallback<HlsPlaylist> {
-    private static final int BUFFER_SEGMENT_SIZE = 256 * 1024;
-    private static final int BUFFER_SEGMENTS = 64;
+    private static final int MAX_CACHED_PLAYLISTS = 16;
+
+    private static final ManifestCache<HlsPlaylist> playlistCache = new ManifestCache<>(MAX_CACHED_PLAYLISTS);
 
     private final AudioCapabilities audioCapabilities;
 
@@ -67,15 +70,47 @@ public class HlsRenderBuilder extends RenderBuilder implements ManifestCallback<
         this.audioCapabilities = audioCapabilities;
     }
 
+    /**
+     * Retrieves the cache of loaded playlists shared by all HlsRenderBuilders
+     *
+     * @return The playlist cache
+     */
+    public static ManifestCache<HlsPlaylist> getPlaylistCache() {
+        return playlistCache;
+    }
+
+    @Override
+    public boolean isLoadingReported() {
+        return true;
+    }
+
     @Override
     public void buildRenderers(EMExoPlayer player, RendererBuilderCallback callback) {
         this.player = player;
         this.callback = callback;
+
+        //Reuse the playlist if this uri has already been loaded
+        final HlsPlaylist cachedPlaylist = playlistCache.get(uri);
+        if (cachedPlaylist != null) {
+            player.getMainHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    buildRenderers(cachedPlaylist);
+                }
+            });
+            return;
+        }
+
         HlsPlaylistParser parser = new HlsPlaylistParser();
         ManifestFetcher<HlsPlaylist> playlistFetcher = new ManifestFetcher<>(uri, new DefaultUriDataSource(context, userAgent), parser);
         playlistFetcher.singleLoad(player.getMainHandler().getLooper(), this);
     }
 
+    @Override
+    protected int getAllocatorChunkSize(BufferPolicy policy) {
+        return policy.getHlsAllocatorChunkSize();
+    }
+
     @Override
     public void onSingleManifestError(IOException e) {
         callback.onRenderersError(e);
@@ -83,12 +118,19 @@ public class HlsRenderBuilder extends RenderBuilder implements ManifestCallback<
 
     @Override
     public void onSingleManifest(HlsPlaylist playlist) {
-        LoadControl loadControl = new DefaultLoadControl(new DefaultAllocator(BUFFER_SEGMENT_SIZE));
+        playlistCache.put(uri, playlist, getExpiry(playlist));
+        buildRenderers(playlist);
+    }
+
+    private void buildRenderers(HlsPlaylist playlist) {
+        PlaybackTracer.mark(player.getPlaybackTrace(), PlaybackTracer.Phase.MANIFEST_FETCH);
+        BufferPolicy bufferPolicy = getBufferPolicy(player);
+        LoadControl loadControl = createLoadControl(bufferPolicy, player);
         DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter();
 
-        //Calculates the Chunk variant indices
+        //Calculates the Chunk variant indices, there are no video decoders to check when only the audio is wanted
         int[] variantIndices = null;
-        if (playlist instanceof HlsMasterPlaylist) {
+        if (!audioOnly && playlist instanceof HlsMasterPlaylist) {
             HlsMasterPlaylist masterPlaylist = (HlsMasterPlaylist) playlist;
 
             try {
@@ -100,16 +142,19 @@ public class HlsRenderBuilder extends RenderBuilder implements ManifestCallback<
         }
 
         //Create the Sample Source to be used by the renders
-        DataSource dataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+        DataSource dataSource = createMediaDataSource(new DefaultUriDataSource(context, bandwidthMeter, userAgent));
         HlsChunkSource chunkSource = new HlsChunkSource(dataSource, uri, playlist, bandwidthMeter,
                 variantIndices, HlsChunkSource.ADAPTIVE_MODE_SPLICE, audioCapabilities);
 
         HlsSampleSource sampleSource = new HlsSampleSource(chunkSource, loadControl,
-                BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, true, player.getMainHandler(), player, EMExoPlayer.RENDER_VIDEO_INDEX);
+                bufferPolicy.getTotalBufferSize(audioOnly), true, player.getMainHandler(), player, EMExoPlayer.RENDER_VIDEO_INDEX);
 
         //Create the renderers
-        MediaCodecVideoTrackRenderer videoRenderer = new MediaCodecVideoTrackRenderer(sampleSource,
-                MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, MAX_JOIN_TIME, player.getMainHandler(), player, DROPPED_FRAME_NOTIFICATION_AMOUNT);
+        MediaCodecVideoTrackRenderer videoRenderer = null;
+        if (!audioOnly) {
+            videoRenderer = new MediaCodecVideoTrackRenderer(sampleSource, MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT,
+                    MAX_JOIN_TIME, player.getMainHandler(), player, DROPPED_FRAME_NOTIFICATION_AMOUNT);
+        }
 
         MediaCodecAudioTrackRenderer audioRenderer = new MediaCodecAudioTrackRenderer(sampleSource);
 
@@ -122,7 +167,20 @@ public class HlsRenderBuilder extends RenderBuilder implements ManifestCallback<
         renderers[EMExoPlayer.RENDER_VIDEO_INDEX] = videoRenderer;
         renderers[EMExoPlayer.RENDER_AUDIO_INDEX] = audioRenderer;
         renderers[EMExoPlayer.RENDER_TIMED_METADATA_INDEX] = id3Renderer;
+        PlaybackTracer.mark(player.getPlaybackTrace(), PlaybackTracer.Phase.BUILD_RENDERERS);
         callback.onRenderers(null, null, renderers);
     }
 
+    /**
+     * Master and finished media playlists are valid for the whole session, live media
+     * playlists only until their next segment is due
+     */
+    private static long getExpiry(HlsPlaylist playlist) {
+        if (playlist instanceof HlsMediaPlaylist && ((HlsMediaPlaylist) playlist).live) {
+            return SystemClock.elapsedRealtime() + ((HlsMediaPlaylist) playlist).targetDurationSecs * 1000L;
+        }
+
+        return ManifestCache.NO_EXPIRY;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.builder;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in memory, least recently used cache of parsed manifests keyed by their uri.  This
+ * lets the render builders skip downloading and parsing a manifest again when the same
+ * item is rebuilt (e.g. on previous/next, error retries or a replaced render builder).
+ * Manifests that never change are kept for the rest of the session, manifests that
+ * can change (live streams) only until they are due for a refresh.
+ *
+ * @param <T> The type of the cached manifest
+ */
+public class ManifestCache<T> {
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private final Map<String, Entry<T>> entries;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    /**
+     * @param maxEntries The maximum number of manifests to hold before the least recently used is evicted
+     */
+    public ManifestCache(final int maxEntries) {
+        entries = new LinkedHashMap<String, Entry<T>>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Retrieves the manifest for the uri if it is cached and has not expired
+     *
+     * @param uri The uri the manifest was loaded from
+     * @return The manifest or null
+     */
+    @Nullable
+    public synchronized T get(String uri) {
+        Entry<T> entry = entries.get(uri);
+        if (entry != null && entry.expiresAtMs <= SystemClock.elapsedRealtime()) {
+            entries.remove(uri);
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return entry.manifest;
+    }
+
+    /**
+     * Determines if an unexpired manifest is cached for the uri without counting
+     * towards the hit or miss counts
+     */
+    public synchronized boolean contains(String uri) {
+        Entry<T> entry = entries.get(uri);
+        return entry != null && entry.expiresAtMs > SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Adds the manifest to the cache
+     *
+     * @param uri The uri the manifest was loaded from
+     * @param manifest The parsed manifest
+     * @param expiresAtMs The {@link SystemClock#elapsedRealtime()} at which the manifest should be reloaded, or {@link #NO_EXPIRY}
+     */
+    public synchronized void put(String uri, T manifest, long expiresAtMs) {
+        if (expiresAtMs <= SystemClock.elapsedRealtime()) {
+            return;
+        }
+
+        entries.put(uri, new Entry<>(manifest, expiresAtMs));
+    }
+
+    public synchronized void remove(String uri) {
+        entries.remove(uri);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    private static class Entry<T> {
+        private final T manifest;
+        private final long expiresAtMs;
+
+        private Entry(T manifest, long expiresAtMs) {
+            this.manifest = manifest;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+}
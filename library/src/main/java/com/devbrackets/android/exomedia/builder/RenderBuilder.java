@@ -23,10 +23,15 @@ import android.net.Uri;
 import android.os.Build;
 import android.util.Log;
 
+import com.devbrackets.android.exomedia.BufferPolicy;
+import com.devbrackets.android.exomedia.cache.MediaCache;
 import com.devbrackets.android.exomedia.exoplayer.EMExoPlayer;
 import com.devbrackets.android.exomedia.listener.RendererBuilderCallback;
 import com.devbrackets.android.exomedia.renderer.EMMediaCodecAudioTrackRenderer;
 import com.devbrackets.android.exomedia.util.MediaUtil;
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
+import com.google.android.exoplayer.DefaultLoadControl;
+import com.google.android.exoplayer.LoadControl;
 import com.google.android.exoplayer.MediaCodecVideoTrackRenderer;
 import com.google.android.exoplayer.TrackRenderer;
 import com.google.android.exoplayer.extractor.Extractor;
@@ -37,6 +42,7 @@ import com.google.android.exoplayer.extractor.ts.AdtsExtractor;
 import com.google.android.exoplayer.extractor.ts.TsExtractor;
 import com.google.android.exoplayer.extractor.webm.WebmExtractor;
 import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 
 
@@ -47,15 +53,25 @@ import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 public class RenderBuilder {
     private static final String TAG = RenderBuilder.class.getSimpleName();
     private static final int DEFAULT_DOWNSTREAM_RENDER_COUNT = 2;
+    private static final int AUDIO_ONLY_DOWNSTREAM_RENDER_COUNT = 1;
     protected static final int DROPPED_FRAME_NOTIFICATION_AMOUNT = 50;
 
     protected static final long MAX_JOIN_TIME = 5000;
-    protected static final int REQUESTED_BUFFER_SIZE = 18 * 1024 * 1024; //18 MB
+
+    /**
+     * @deprecated Use {@link BufferPolicy#getTotalBufferSize(boolean)} of the {@link #getBufferPolicy(EMExoPlayer) policy}
+     */
+    @Deprecated
+    protected static final int REQUESTED_BUFFER_SIZE = BufferPolicy.DEFAULT.getTotalBufferSize(false);
 
     protected final Context context;
     protected final String userAgent;
     protected final String uri;
     protected MediaUtil.MediaType requestedDefaultType;
+    protected boolean audioOnly = false;
+    protected BufferPolicy bufferPolicy;
+    protected MediaCache mediaCache;
+    protected String contentId;
 
     public RenderBuilder(Context context, String userAgent, String uri) {
         this.uri = uri;
@@ -68,15 +84,110 @@ public class RenderBuilder {
         this.requestedDefaultType = defaultType;
     }
 
+    /**
+     * Sets whether only the audio renderer should be built.  When enabled the video (and text)
+     * renderers are left out, the {@link EMExoPlayer} fills their slots with dummy renderers,
+     * and no video decoders are queried or video buffers reserved.  This should be
+     * used whenever nothing will be displayed, e.g. by the {@link com.devbrackets.android.exomedia.EMAudioPlayer}.
+     *
+     * @param audioOnly True if only the audio should be rendered
+     */
+    public void setAudioOnly(boolean audioOnly) {
+        this.audioOnly = audioOnly;
+    }
+
+    public boolean isAudioOnly() {
+        return audioOnly;
+    }
+
+    /**
+     * Sets the policy used to size the buffers of the renderers.  If no policy is
+     * set the one from the {@link EMExoPlayer} is used.
+     *
+     * @param bufferPolicy The policy to use or null
+     */
+    public void setBufferPolicy(BufferPolicy bufferPolicy) {
+        this.bufferPolicy = bufferPolicy;
+    }
+
+    /**
+     * Sets the cache to load the media through.  Manifests are never cached.
+     *
+     * @param mediaCache The cache to use or null to always load from the network
+     * @param contentId The id of the item being played, used to build stable cache keys (see {@link MediaCache.CacheKeyFactory})
+     */
+    public void setMediaCache(MediaCache mediaCache, String contentId) {
+        this.mediaCache = mediaCache;
+        this.contentId = contentId;
+    }
+
+    /**
+     * Wraps the data source for loading media with the {@link #setMediaCache(MediaCache, String) cache}, if any
+     *
+     * @param upstream The data source that loads from the network
+     * @return The data source to load the media with
+     */
+    protected DataSource createMediaDataSource(DataSource upstream) {
+        return mediaCache == null ? upstream : mediaCache.createDataSource(upstream, contentId);
+    }
+
+    /**
+     * Retrieves the policy to build the renderers for the player with
+     *
+     * @param player The player the renderers are being built for
+     * @return The buffer policy
+     */
+    protected BufferPolicy getBufferPolicy(EMExoPlayer player) {
+        return bufferPolicy != null ? bufferPolicy : player.getBufferPolicy();
+    }
+
+    /**
+     * Creates the load control described by the policy, which informs the player when
+     * it starts and stops loading
+     *
+     * @param policy The buffer policy
+     * @param player The player the renderers are being built for
+     * @return The LoadControl to share between the sample sources
+     */
+    protected LoadControl createLoadControl(BufferPolicy policy, EMExoPlayer player) {
+        return new DefaultLoadControl(new DefaultAllocator(getAllocatorChunkSize(policy)), player.getMainHandler(), player, policy.getLowWatermarkMs(),
+                policy.getHighWatermarkMs(), policy.getLowBufferLoad(), policy.getHighBufferLoad());
+    }
+
+    /**
+     * Retrieves the size of the chunks that the allocator of the load control hands out
+     *
+     * @param policy The buffer policy
+     * @return The chunk size in bytes
+     */
+    protected int getAllocatorChunkSize(BufferPolicy policy) {
+        return policy.getAllocatorChunkSize();
+    }
+
+    /**
+     * Determines if the renderers share a load control from {@link #createLoadControl(BufferPolicy, EMExoPlayer)},
+     * which informs the player when it starts and stops loading.  The ExtractorSampleSource used
+     * for progressive media manages its own buffer, so its loading is never reported.
+     *
+     * @return True if the player will be informed of the loading
+     */
+    public boolean isLoadingReported() {
+        return false;
+    }
+
     public void buildRenderers(EMExoPlayer player, RendererBuilderCallback callback) {
         //Create the Sample Source to be used by the renderers
-        DataSource dataSource = new DefaultUriDataSource(context, userAgent);
+        DataSource dataSource = createMediaDataSource(new DefaultUriDataSource(context, userAgent));
+        int downstreamRendererCount = audioOnly ? AUDIO_ONLY_DOWNSTREAM_RENDER_COUNT : DEFAULT_DOWNSTREAM_RENDER_COUNT;
         ExtractorSampleSource sampleSource = new ExtractorSampleSource(Uri.parse(MediaUtil.getUriWithProtocol(uri)), dataSource,
-                getExtractor(uri, requestedDefaultType), DEFAULT_DOWNSTREAM_RENDER_COUNT, REQUESTED_BUFFER_SIZE);
+                getExtractor(uri, requestedDefaultType), downstreamRendererCount, getBufferPolicy(player).getTotalBufferSize(audioOnly));
 
         //Create the Renderers
-        MediaCodecVideoTrackRenderer videoRenderer = new MediaCodecVideoTrackRenderer(sampleSource, null, true, MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT,
-                MAX_JOIN_TIME, null, player.getMainHandler(), player, DROPPED_FRAME_NOTIFICATION_AMOUNT);
+        MediaCodecVideoTrackRenderer videoRenderer = null;
+        if (!audioOnly) {
+            videoRenderer = new MediaCodecVideoTrackRenderer(sampleSource, null, true, MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT,
+                    MAX_JOIN_TIME, null, player.getMainHandler(), player, DROPPED_FRAME_NOTIFICATION_AMOUNT);
+        }
 
         EMMediaCodecAudioTrackRenderer audioRenderer = new EMMediaCodecAudioTrackRenderer(sampleSource, null, true, player.getMainHandler(), player);
 
@@ -84,6 +195,7 @@ public class RenderBuilder {
         TrackRenderer[] renderers = new TrackRenderer[EMExoPlayer.RENDER_COUNT];
         renderers[EMExoPlayer.RENDER_VIDEO_INDEX] = videoRenderer;
         renderers[EMExoPlayer.RENDER_AUDIO_INDEX] = audioRenderer;
+        PlaybackTracer.mark(player.getPlaybackTrace(), PlaybackTracer.Phase.BUILD_RENDERERS);
         callback.onRenderers(null, null, renderers);
     }
 
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.cache;
+
+import android.support.annotation.Nullable;
+
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer.upstream.cache.SimpleCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A least recently used disk cache for media segments.  The render builders put the data
+ * sources they stream media with behind {@link #createDataSource(DataSource, String)} so that
+ * replays, seeks back and retries are read from disk instead of the network.  Byte ranges are
+ * cached independently, so a partially cached segment only loads the missing part.
+ * <p/>
+ * Media urls are often signed and expire, so they make poor cache keys.  The
+ * {@link CacheKeyFactory} builds a stable key from the content id of the item and the request.
+ * <p/>
+ * Only a single MediaCache may exist for a directory at a time.
+ */
+public class MediaCache {
+    public interface CacheKeyFactory {
+        /**
+         * Builds the key the data of the request is cached under.  The position of the
+         * request is kept separately, so different ranges of the same stream should share
+         * a key.
+         *
+         * @param contentId The id of the item being played, or null if it is unknown
+         * @param dataSpec The request
+         * @return The key, or null if the request should not be cached
+         */
+        @Nullable
+        String getCacheKey(@Nullable String contentId, DataSpec dataSpec);
+    }
+
+    private final SimpleCache cache;
+    private final CacheKeyFactory keyFactory;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong networkBytesRead = new AtomicLong();
+
+    /**
+     * @param cacheDir The directory to store the cached media in
+     * @param maxBytes The size the cache may grow to before the least recently used media is evicted
+     * @param keyFactory The factory for the keys to cache the requests under
+     */
+    public MediaCache(File cacheDir, long maxBytes, CacheKeyFactory keyFactory) {
+        this.keyFactory = keyFactory;
+        cache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(maxBytes));
+    }
+
+    /**
+     * Wraps the upstream source so that requests with a cache key are read from the cache
+     * when possible, and written to it otherwise.
+     *
+     * @param upstream The source to load uncached data with
+     * @param contentId The id of the item the data source will load, or null
+     * @return The caching data source
+     */
+    public DataSource createDataSource(DataSource upstream, @Nullable String contentId) {
+        return new CachingDataSource(new CountingDataSource(upstream), contentId);
+    }
+
+    /**
+     * @return The number of bytes read through the cache's data sources, from either the cache or the network
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return The number of bytes that were read from the cache instead of the network
+     */
+    public long getBytesSaved() {
+        return Math.max(0, bytesRead.get() - networkBytesRead.get());
+    }
+
+    /**
+     * @return The fraction [0, 1] of the bytes read that came from the cache
+     */
+    public float getHitRatio() {
+        long read = bytesRead.get();
+        return read == 0 ? 0 : (float) getBytesSaved() / read;
+    }
+
+    /**
+     * @return The number of bytes currently stored in the cache
+     */
+    public long getCacheSize() {
+        return cache.getCacheSpace();
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + getCacheSize() + " read=" + getBytesRead() + " saved=" + getBytesSaved() + " hitRatio=" + getHitRatio();
+    }
+
+    /**
+     * Chooses between the cache and the upstream for each request, depending on
+     * whether the request has a cache key
+     */
+    private class CachingDataSource implements DataSource {
+        private final DataSource upstream;
+        private final DataSource cacheDataSource;
+        private final String contentId;
+        private DataSource currentDataSource;
+
+        private CachingDataSource(DataSource upstream, String contentId) {
+            this.upstream = upstream;
+            this.contentId = contentId;
+            cacheDataSource = new CacheDataSource(cache, upstream, false, true);
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            String key = keyFactory.getCacheKey(contentId, dataSpec);
+            if (key == null) {
+                currentDataSource = upstream;
+                return upstream.open(dataSpec);
+            }
+
+            currentDataSource = cacheDataSource;
+            return cacheDataSource.open(new DataSpec(dataSpec.uri, dataSpec.absoluteStreamPosition, dataSpec.position,
+                    dataSpec.length, key, dataSpec.flags));
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            int read = currentDataSource.read(buffer, offset, readLength);
+            if (read > 0) {
+                bytesRead.addAndGet(read);
+            }
+
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (currentDataSource != null) {
+                currentDataSource.close();
+                currentDataSource = null;
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes that had to come from the network
+     */
+    private class CountingDataSource implements DataSource {
+        private final DataSource upstream;
+
+        private CountingDataSource(DataSource upstream) {
+            this.upstream = upstream;
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            return upstream.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            int read = upstream.read(buffer, offset, readLength);
+            if (read > 0) {
+                networkBytesRead.addAndGet(read);
+            }
+
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            upstream.close();
+        }
+    }
+}
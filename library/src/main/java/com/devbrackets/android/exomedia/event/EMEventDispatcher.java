@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.event;
+
+import android.support.annotation.Nullable;
+
+import com.devbrackets.android.exomedia.util.MediaProgressHolder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A lightweight, typed alternative to the Otto bus for the events the library posts.  Each
+ * event type has its own {@link Channel} with an array of subscribers that are called directly,
+ * so posting doesn't use reflection and doesn't allocate.  Like Otto's <code>@Produce</code>
+ * methods, every channel keeps the latest event it was posted, and new subscribers receive
+ * it as soon as they subscribe.  Events that the poster re-uses (such as the {@link EMMediaProgressEvent})
+ * can't be kept as they are, so their channel copies the values out with a {@link Retainer} instead.
+ * <p/>
+ * Events are delivered synchronously on the thread that posts them.  The players post on
+ * the main thread.  Components that post often (such as the progress poll) retrieve their
+ * channel once with {@link #getChannel(Class)} and post to it directly.
+ */
+public class EMEventDispatcher {
+    public interface Subscriber<T> {
+        /**
+         * Called when an event is posted to the channel subscribed to
+         *
+         * @param event The event.  Events that are re-used by the poster (such as the
+         *              {@link EMMediaProgressEvent}) should be copied before they are kept.
+         */
+        void onEvent(T event);
+    }
+
+    /**
+     * Keeps the latest event of a channel whose events are re-used by the poster
+     */
+    public interface Retainer<T> {
+        /**
+         * Called for every event posted to the channel.  The event may be changed by the
+         * poster once this returns, so its values should be copied.
+         *
+         * @param event The event that was posted
+         */
+        void retain(T event);
+
+        /**
+         * Creates an event with the retained values, which is given to new subscribers
+         *
+         * @return A new event or null if nothing was retained
+         */
+        @Nullable
+        T getRetained();
+
+        /**
+         * Forgets the retained values
+         */
+        void clear();
+    }
+
+    /**
+     * The subscribers and the latest event of a single event type
+     */
+    public static final class Channel<T> {
+        private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+        //Replaced instead of modified, so posting can iterate it without locking
+        private volatile Subscriber[] subscribers = NO_SUBSCRIBERS;
+        private volatile T latest;
+        private volatile Retainer<T> retainer;
+
+        private Channel() {
+            //Purposefully left blank
+        }
+
+        /**
+         * Informs all subscribers of the event, and keeps it as the latest event
+         *
+         * @param event The event to post
+         */
+        @SuppressWarnings("unchecked")
+        public void post(T event) {
+            Retainer<T> currentRetainer = retainer;
+            if (currentRetainer != null) {
+                currentRetainer.retain(event);
+            } else {
+                latest = event;
+            }
+
+            for (Subscriber subscriber : subscribers) {
+                subscriber.onEvent(event);
+            }
+        }
+
+        /**
+         * Adds the subscriber, and informs it of the latest event if one has been posted
+         *
+         * @param subscriber The subscriber to add
+         */
+        public void subscribe(Subscriber<? super T> subscriber) {
+            synchronized (this) {
+                Subscriber[] current = subscribers;
+                Subscriber[] updated = new Subscriber[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, current.length);
+                updated[current.length] = subscriber;
+                subscribers = updated;
+            }
+
+            T event = getLatest();
+            if (event != null) {
+                subscriber.onEvent(event);
+            }
+        }
+
+        /**
+         * Removes the subscriber added with {@link #subscribe(Subscriber)}
+         *
+         * @param subscriber The subscriber to remove
+         */
+        public synchronized void unsubscribe(Subscriber<? super T> subscriber) {
+            Subscriber[] current = subscribers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscriber) {
+                    Subscriber[] updated = current.length == 1 ? NO_SUBSCRIBERS : new Subscriber[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    subscribers = updated;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return True if anything is subscribed to the channel
+         */
+        public boolean hasSubscribers() {
+            return subscribers.length > 0;
+        }
+
+        /**
+         * Sets the retainer that keeps the latest event, for events that are re-used by the
+         * poster.  Without a retainer the latest event itself is kept.
+         *
+         * @param retainer The retainer to use or null
+         */
+        public void setRetainer(@Nullable Retainer<T> retainer) {
+            this.retainer = retainer;
+            latest = null;
+        }
+
+        /**
+         * Retrieves the latest event posted to the channel.  For channels with a {@link Retainer}
+         * this is a new copy of the event on every call.
+         *
+         * @return The latest event, or null
+         */
+        @Nullable
+        public T getLatest() {
+            Retainer<T> currentRetainer = retainer;
+            return currentRetainer != null ? currentRetainer.getRetained() : latest;
+        }
+
+        /**
+         * Forgets the latest event, so that new subscribers aren't informed of it
+         */
+        public void clearLatest() {
+            latest = null;
+            Retainer<T> currentRetainer = retainer;
+            if (currentRetainer != null) {
+                currentRetainer.clear();
+            }
+        }
+    }
+
+    /**
+     * Retains the progress events, which the players re-use for every update, in a
+     * {@link MediaProgressHolder} so that posting them still doesn't allocate
+     */
+    private static final class ProgressRetainer implements Retainer<EMMediaProgressEvent> {
+        private final MediaProgressHolder holder = new MediaProgressHolder();
+
+        @Override
+        public void retain(EMMediaProgressEvent event) {
+            holder.publish(event);
+        }
+
+        @Nullable
+        @Override
+        public EMMediaProgressEvent getRetained() {
+            return holder.getSnapshot();
+        }
+
+        @Override
+        public void clear() {
+            holder.clear();
+        }
+    }
+
+    private final Map<Class<?>, Channel<?>> channels = new HashMap<>();
+
+    public EMEventDispatcher() {
+        getChannel(EMMediaProgressEvent.class).setRetainer(new ProgressRetainer());
+    }
+
+    /**
+     * Retrieves the channel for the event type, creating it if needed
+     *
+     * @param eventType The class of the events
+     * @return The channel for the events
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> Channel<T> getChannel(Class<T> eventType) {
+        Channel<T> channel = (Channel<T>) channels.get(eventType);
+        if (channel == null) {
+            channel = new Channel<>();
+            channels.put(eventType, channel);
+        }
+
+        return channel;
+    }
+
+    /**
+     * Posts the event to the channel of its class (see {@link Channel#post(Object)})
+     *
+     * @param event The event to post
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void post(T event) {
+        getChannel((Class<T>) event.getClass()).post(event);
+    }
+
+    /**
+     * Subscribes to the events of the type (see {@link Channel#subscribe(Subscriber)})
+     *
+     * @param eventType The class of the events
+     * @param subscriber The subscriber to add
+     */
+    public <T> void subscribe(Class<T> eventType, Subscriber<? super T> subscriber) {
+        getChannel(eventType).subscribe(subscriber);
+    }
+
+    /**
+     * Unsubscribes from the events of the type (see {@link Channel#unsubscribe(Subscriber)})
+     *
+     * @param eventType The class of the events
+     * @param subscriber The subscriber to remove
+     */
+    public <T> void unsubscribe(Class<T> eventType, Subscriber<? super T> subscriber) {
+        getChannel(eventType).unsubscribe(subscriber);
+    }
+}
@@ -19,7 +19,9 @@ package com.devbrackets.android.exomedia.event;
 /**
  * An event to be used to inform listeners of media (e.g. audio, video) progress
  * changes.  This event will be re-used internally to avoid over-creating objects,
- * if you need to store the current values use
+ * if you need to store the current values use {@link #obtain(EMMediaProgressEvent)}
+ * or read them from a {@link com.devbrackets.android.exomedia.util.MediaProgressHolder}
+ * in to an event of your own.
  */
 public class EMMediaProgressEvent {
     private static final int MAX_BUFFER_PERCENT = 100;
@@ -23,16 +23,22 @@ import android.media.MediaPlayer;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.PowerManager;
+import android.support.annotation.Nullable;
 import android.view.Surface;
 
+import com.devbrackets.android.exomedia.BufferPolicy;
 import com.devbrackets.android.exomedia.builder.RenderBuilder;
 import com.devbrackets.android.exomedia.listener.ExoPlayerListener;
 import com.devbrackets.android.exomedia.listener.Id3MetadataListener;
 import com.devbrackets.android.exomedia.listener.InfoListener;
 import com.devbrackets.android.exomedia.listener.InternalErrorListener;
+import com.devbrackets.android.exomedia.listener.LoadingListener;
 import com.devbrackets.android.exomedia.listener.RendererBuilderCallback;
 import com.devbrackets.android.exomedia.listener.TextListener;
 import com.devbrackets.android.exomedia.renderer.EMMediaCodecAudioTrackRenderer;
+import com.devbrackets.android.exomedia.util.BurstStats;
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
+import com.google.android.exoplayer.DefaultLoadControl;
 import com.google.android.exoplayer.DummyTrackRenderer;
 import com.google.android.exoplayer.ExoPlaybackException;
 import com.google.android.exoplayer.ExoPlayer;
@@ -60,7 +66,8 @@ import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventListener, DefaultBandwidthMeter.EventListener, HlsSampleSource.EventListener,
-        MediaCodecVideoTrackRenderer.EventListener, DashChunkSource.EventListener, TextRenderer, MediaCodecAudioTrackRenderer.EventListener, StreamingDrmSessionManager.EventListener {
+        MediaCodecVideoTrackRenderer.EventListener, DashChunkSource.EventListener, TextRenderer, MediaCodecAudioTrackRenderer.EventListener, StreamingDrmSessionManager.EventListener,
+        DefaultLoadControl.EventListener {
 
     public static final int DISABLED_TRACK = -1;
     public static final int PRIMARY_TRACK = 0;
@@ -71,8 +78,17 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
     public static final int RENDER_CLOSED_CAPTION_INDEX = 2;
     public static final int RENDER_TIMED_METADATA_INDEX = 3;
 
-    public static final int BUFFER_LENGTH_MIN = 1000;
-    public static final int REBUFFER_LENGTH_MIN = 5000;
+    /**
+     * @deprecated Use {@link BufferPolicy#getMinBufferMs()} of the {@link #getBufferPolicy() policy}
+     */
+    @Deprecated
+    public static final int BUFFER_LENGTH_MIN = BufferPolicy.DEFAULT.getMinBufferMs();
+
+    /**
+     * @deprecated Use {@link BufferPolicy#getMinRebufferMs()} of the {@link #getBufferPolicy() policy}
+     */
+    @Deprecated
+    public static final int REBUFFER_LENGTH_MIN = BufferPolicy.DEFAULT.getMinRebufferMs();
 
     public enum RenderBuildingState {
         IDLE,
@@ -81,6 +97,7 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
     }
 
     private RenderBuilder rendererBuilder;
+    private final BufferPolicy bufferPolicy;
     private final ExoPlayer player;
     private final PlayerControl playerControl;
     private final Handler mainHandler;
@@ -105,6 +122,11 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
     private Id3MetadataListener id3MetadataListener;
     private InternalErrorListener internalErrorListener;
     private InfoListener infoListener;
+    private LoadingListener loadingListener;
+
+    private boolean loading = false;
+    private final BurstStats burstStats = new BurstStats();
+    private PlaybackTracer.Trace playbackTrace;
 
     private PowerManager.WakeLock wakeLock = null;
 
@@ -113,8 +135,17 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
     }
 
     public EMExoPlayer(RenderBuilder rendererBuilder) {
+        this(rendererBuilder, BufferPolicy.DEFAULT);
+    }
+
+    /**
+     * @param rendererBuilder The builder for the renderers, or null
+     * @param bufferPolicy The policy for when playback starts and resumes, and the default for the renderer buffers
+     */
+    public EMExoPlayer(RenderBuilder rendererBuilder, BufferPolicy bufferPolicy) {
         this.rendererBuilder = rendererBuilder;
-        player = ExoPlayer.Factory.newInstance(RENDER_COUNT, BUFFER_LENGTH_MIN, REBUFFER_LENGTH_MIN);
+        this.bufferPolicy = bufferPolicy;
+        player = ExoPlayer.Factory.newInstance(RENDER_COUNT, bufferPolicy.getMinBufferMs(), bufferPolicy.getMinRebufferMs());
         player.addListener(this);
         playerControl = new PlayerControl(player);
         mainHandler = new Handler();
@@ -158,6 +189,24 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
         infoListener = listener;
     }
 
+    public void setLoadingListener(LoadingListener listener) {
+        loadingListener = listener;
+    }
+
+    /**
+     * Sets the trace the renderers are marked in as they are built and prepared
+     *
+     * @param trace The trace of the current item or null
+     */
+    public void setPlaybackTrace(@Nullable PlaybackTracer.Trace trace) {
+        playbackTrace = trace;
+    }
+
+    @Nullable
+    public PlaybackTracer.Trace getPlaybackTrace() {
+        return playbackTrace;
+    }
+
     public void setTextListener(TextListener listener) {
         textListener = listener;
     }
@@ -219,6 +268,7 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
 
         if (rendererBuildingState == RenderBuildingState.BUILT) {
             player.stop();
+            onLoadingChanged(false);
         }
 
         if (builderCallback != null) {
@@ -266,6 +316,7 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
         pushTrackSelection(RENDER_AUDIO_INDEX, true);
         pushTrackSelection(RENDER_CLOSED_CAPTION_INDEX, true);
         player.prepare(renderers);
+        PlaybackTracer.mark(playbackTrace, PlaybackTracer.Phase.RENDERERS_PREPARED);
     }
 
     public void onRenderersError(Exception e) {
@@ -299,6 +350,34 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
         rendererBuildingState = RenderBuildingState.IDLE;
         surface = null;
         player.release();
+        onLoadingChanged(false);
+    }
+
+    /**
+     * @return True if media is currently being loaded
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Retrieves the statistics on the loading bursts of this player, which show
+     * how long the radio was kept active and how much was loaded each time
+     *
+     * @return The burst statistics
+     */
+    public BurstStats getBurstStats() {
+        return burstStats;
+    }
+
+    /**
+     * Determines if the listener set with {@link #setLoadingListener(LoadingListener)} will be
+     * informed for the current renderer builder (see {@link RenderBuilder#isLoadingReported()})
+     *
+     * @return True if loading changes are reported
+     */
+    public boolean isLoadingReported() {
+        return rendererBuilder != null && rendererBuilder.isLoadingReported();
     }
 
 
@@ -342,6 +421,10 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
         return mainHandler;
     }
 
+    public BufferPolicy getBufferPolicy() {
+        return bufferPolicy;
+    }
+
     /**
      * This function has the MediaPlayer access the low-level power manager
      * service to control the device's power usage while playing is occurring.
@@ -505,14 +588,33 @@ public class EMExoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventL
 
     @Override
     public void onLoadCompleted(int sourceId, long bytesLoaded, int type, int trigger, Format format, int mediaStartTimeMs, int mediaEndTimeMs, long elapsedRealtimeMs, long loadDurationMs) {
+        burstStats.onBytesLoaded(bytesLoaded);
         if (infoListener != null) {
             infoListener.onLoadCompleted(sourceId, bytesLoaded, type, trigger, format, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs, loadDurationMs);
         }
     }
 
+    @Override
+    public void onLoadingChanged(boolean loading) {
+        if (this.loading == loading) {
+            return;
+        }
+
+        this.loading = loading;
+        if (loading) {
+            burstStats.onBurstStarted();
+        } else {
+            burstStats.onBurstEnded();
+        }
+
+        if (loadingListener != null) {
+            loadingListener.onLoadingChanged(loading);
+        }
+    }
+
     @Override
     public void onLoadCanceled(int sourceId, long bytesLoaded) {
-        //Purposefully left blank
+        burstStats.onBytesLoaded(bytesLoaded);
     }
 
     @Override
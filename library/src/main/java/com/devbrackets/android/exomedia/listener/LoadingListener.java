@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.listener;
+
+/**
+ * A listener for when the player starts and stops loading media.  With a
+ * {@link com.devbrackets.android.exomedia.BufferPolicy} that has far apart watermarks the
+ * loading happens in bursts, in between which the network isn't needed.
+ */
+public interface LoadingListener {
+    /**
+     * Called on the main thread when loading starts or stops
+     *
+     * @param loading True if media is being loaded
+     */
+    void onLoadingChanged(boolean loading);
+}
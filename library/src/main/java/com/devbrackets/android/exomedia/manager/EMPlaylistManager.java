@@ -35,6 +35,7 @@ import com.devbrackets.android.exomedia.event.EMMediaStopEvent;
 import com.devbrackets.android.exomedia.event.EMPlaylistItemChangedEvent;
 import com.devbrackets.android.exomedia.listener.EMPlaylistServiceCallback;
 import com.devbrackets.android.exomedia.service.EMPlaylistService;
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
 import com.squareup.otto.Bus;
 
 import java.lang.ref.WeakReference;
@@ -200,6 +201,9 @@ public abstract class EMPlaylistManager<I extends EMPlaylistManager.PlaylistItem
     public void registerServiceCallbacks(EMPlaylistServiceCallback callback) {
         if (callback != null) {
             callbackList.add(callback);
+            if (service != null) {
+                service.updateProgressPoll();
+            }
         }
     }
 
@@ -212,9 +216,21 @@ public abstract class EMPlaylistManager<I extends EMPlaylistManager.PlaylistItem
     public void unRegisterServiceCallbacks(EMPlaylistServiceCallback callback) {
         if (callback != null) {
             callbackList.remove(callback);
+            if (service != null) {
+                service.updateProgressPoll();
+            }
         }
     }
 
+    /**
+     * Determines if any callbacks are registered with {@link #registerServiceCallbacks(EMPlaylistServiceCallback)}
+     *
+     * @return True if there are registered callbacks
+     */
+    public boolean hasServiceCallbacks() {
+        return !callbackList.isEmpty();
+    }
+
     /**
      * A utility method to allow for single line implementations to start playing the media
      * item as specified by the passed parameters.
@@ -225,8 +241,22 @@ public abstract class EMPlaylistManager<I extends EMPlaylistManager.PlaylistItem
      * @param startPaused True if the media item should start paused instead of playing
      */
     public void play(List<I> playListItems, int startIndex, int seekPosition, boolean startPaused) {
+        play(playListItems, startIndex, seekPosition, startPaused, null);
+    }
+
+    /**
+     * A utility method to allow for single line implementations to start playing the media
+     * item as specified by the passed parameters, following the request with a trace.
+     *
+     * @param playListItems The list of items to play
+     * @param startIndex The index in the playlistItems to start playback
+     * @param seekPosition The position in the startIndex item to start at (in milliseconds)
+     * @param startPaused True if the media item should start paused instead of playing
+     * @param trace The trace of the play request, which the service follows until the item is ready, or null
+     */
+    public void play(List<I> playListItems, int startIndex, int seekPosition, boolean startPaused, @Nullable PlaybackTracer.Trace trace) {
         setParameters(playListItems, startIndex);
-        play(seekPosition, startPaused);
+        play(seekPosition, startPaused, trace);
     }
 
     /**
@@ -234,6 +264,16 @@ public abstract class EMPlaylistManager<I extends EMPlaylistManager.PlaylistItem
      * Alternatively you can call {@link #play(java.util.List, int, int, boolean)}
      */
     public void play(int seekPosition, boolean startPaused) {
+        play(seekPosition, startPaused, null);
+    }
+
+    /**
+     * In order to use this method you must call {@link #setParameters(java.util.List, int)} first.
+     * Alternatively you can call {@link #play(java.util.List, int, int, boolean, PlaybackTracer.Trace)}
+     *
+     * @param trace The trace of the play request, which the service follows until the item is ready, or null
+     */
+    public void play(int seekPosition, boolean startPaused, @Nullable PlaybackTracer.Trace trace) {
         I currentItem = getCurrentItem();
 
         if (currentItem == null) {
@@ -245,6 +285,9 @@ public abstract class EMPlaylistManager<I extends EMPlaylistManager.PlaylistItem
         intent.setAction(EMRemoteActions.ACTION_START_SERVICE);
         intent.putExtra(EMRemoteActions.ACTION_EXTRA_SEEK_POSITION, seekPosition);
         intent.putExtra(EMRemoteActions.ACTION_EXTRA_START_PAUSED, startPaused);
+        if (trace != null) {
+            intent.putExtra(EMRemoteActions.ACTION_EXTRA_TRACE_ID, trace.getId());
+        }
         getApplication().startService(intent);
     }
 
@@ -262,6 +305,23 @@ public abstract class EMPlaylistManager<I extends EMPlaylistManager.PlaylistItem
         setPlaylistId(INVALID_PLAYLIST_ID);
     }
 
+    /**
+     * Appends an item to the end of the current play list without changing the current
+     * playback index.  If no play list has been set then a new one will be created.
+     * <p/>
+     * <b><em>NOTE:</em></b> The list passed to {@link #setParameters(java.util.List, int)} must
+     * support {@link List#add(Object)} in order to append to it.
+     *
+     * @param item The item to append
+     */
+    public void addItem(I item) {
+        if (playList == null) {
+            playList = new ArrayList<>();
+        }
+
+        playList.add(item);
+    }
+
     /**
      * Sets the ID associated with the current playlist.
      *
@@ -490,6 +550,36 @@ public abstract class EMPlaylistManager<I extends EMPlaylistManager.PlaylistItem
         return getCurrentItem();
     }
 
+    /**
+     * Retrieves the Item that {@link #next()} would move to, without changing the
+     * currently selected item.  If there isn't a next item then null will be returned.
+     *
+     * @return The next Item or null
+     */
+    @Nullable
+    public I peekNext() {
+        int index = findNextAllowedIndex(currentPosition + 1);
+        return index < getPlayListSize() ? getItem(index) : null;
+    }
+
+    /**
+     * Retrieves the allowed items that follow the currently selected item, in playback
+     * order, without changing the currently selected item.
+     *
+     * @param count The maximum number of items to retrieve
+     * @return The upcoming items, which may be fewer than <code>count</code>
+     */
+    public List<I> getUpcomingItems(int count) {
+        List<I> items = new ArrayList<>(count);
+        int index = findNextAllowedIndex(currentPosition + 1);
+        while (index < getPlayListSize() && items.size() < count) {
+            items.add(getItem(index));
+            index = findNextAllowedIndex(index + 1);
+        }
+
+        return items;
+    }
+
     /**
      * Updates the currently selected item to the previous one and retrieves the
      * Item representing that item.  If there aren't any items in the play
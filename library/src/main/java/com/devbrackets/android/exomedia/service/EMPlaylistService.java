@@ -22,23 +22,30 @@ import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.media.AudioManager;
+import android.media.MediaCodec;
 import android.media.MediaPlayer;
 import android.net.Uri;
 import android.net.wifi.WifiManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.Nullable;
+import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
 
+import com.devbrackets.android.exomedia.BufferPolicy;
 import com.devbrackets.android.exomedia.EMAudioPlayer;
+import com.devbrackets.android.exomedia.cache.MediaCache;
 import com.devbrackets.android.exomedia.EMLockScreen;
 import com.devbrackets.android.exomedia.EMNotification;
 import com.devbrackets.android.exomedia.EMRemoteActions;
 import com.devbrackets.android.exomedia.EMVideoView;
 import com.devbrackets.android.exomedia.R;
+import com.devbrackets.android.exomedia.event.EMEventDispatcher;
 import com.devbrackets.android.exomedia.event.EMMediaAllowedTypeChangedEvent;
 import com.devbrackets.android.exomedia.event.EMMediaNextEvent;
 import com.devbrackets.android.exomedia.event.EMMediaPlayPauseEvent;
@@ -52,12 +59,23 @@ import com.devbrackets.android.exomedia.event.EMPlaylistItemChangedEvent;
 import com.devbrackets.android.exomedia.listener.EMAudioFocusCallback;
 import com.devbrackets.android.exomedia.listener.EMPlaylistServiceCallback;
 import com.devbrackets.android.exomedia.listener.EMProgressCallback;
+import com.devbrackets.android.exomedia.listener.InternalErrorListener;
+import com.devbrackets.android.exomedia.listener.LoadingListener;
 import com.devbrackets.android.exomedia.manager.EMPlaylistManager;
+import com.devbrackets.android.exomedia.util.ConnectivityMonitor;
 import com.devbrackets.android.exomedia.util.EMAudioFocusHelper;
+import com.devbrackets.android.exomedia.util.ErrorClassifier;
+import com.devbrackets.android.exomedia.util.MediaProgressHolder;
+import com.devbrackets.android.exomedia.util.MediaUtil;
+import com.devbrackets.android.exomedia.util.PlaybackTracer;
+import com.devbrackets.android.exomedia.util.TimerScheduler;
+import com.google.android.exoplayer.MediaCodecTrackRenderer;
+import com.google.android.exoplayer.audio.AudioTrack;
 import com.squareup.otto.Bus;
 import com.squareup.otto.Produce;
 import com.squareup.otto.Subscribe;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -66,6 +84,10 @@ import java.util.List;
  * being played isn't downloaded (see {@link #isDownloaded(EMPlaylistManager.PlaylistItem)}).
  * </p>
  * This requires the manifest permission &lt;uses-permission android:name="android.permission.WAKE_LOCK" /&gt;
+ * </p>
+ * The network connection is monitored to pick the items that can be played and to resume
+ * failed playback as soon as the network returns (see {@link #isNetworkAvailable()}), which
+ * requires the manifest permission &lt;uses-permission android:name="android.permission.ACCESS_NETWORK_STATE" /&gt;
  */
 @SuppressWarnings("unused")
 public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem, M extends EMPlaylistManager<I>> extends Service implements
@@ -73,6 +95,10 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
     private static final String TAG = "EMPlaylistService";
     public static final String START_SERVICE = "EMPlaylistService.start";
 
+    private static final int FOREGROUND_PROGRESS_POLL_DELAY = 33; // ~30 fps for visible UIs
+    private static final int BACKGROUND_PROGRESS_POLL_DELAY = 1000;
+    private static final int GAPLESS_PREPARATION_SLACK = 1000;
+
     public enum MediaState {
         RETRIEVING,    // the MediaRetriever is retrieving music
         STOPPED,       // Stopped not preparing music
@@ -84,14 +110,34 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
 
     protected WifiManager.WifiLock wifiLock;
     protected EMAudioFocusHelper audioFocusHelper;
+    protected ConnectivityMonitor connectivityMonitor;
 
     protected EMAudioPlayer audioPlayer;
-    protected EMMediaProgressEvent currentMediaProgress;
+    //The player re-uses its progress event, so the values are copied in to a holder that can be read from any thread
+    protected final MediaProgressHolder currentMediaProgress = new MediaProgressHolder();
+
+    //The player the next item is prepared on before the current one ends (see getGaplessPreparationTime)
+    protected EMAudioPlayer nextAudioPlayer;
+    protected I nextPlaylistItem;
+    private boolean nextAudioPlayerPrepared = false;
+
+    //Wakes up once when the next item should be prepared, instead of polling the progress for it
+    private final TimerScheduler.Task gaplessPreparationTask = TimerScheduler.getMainScheduler().createTask(new Runnable() {
+        @Override
+        public void run() {
+            gaplessPreparationTask.cancel();
+            updateGaplessPreparation();
+        }
+    });
+
+    //The trace of the request that started the service, until it is handed to the player of the item
+    protected PlaybackTracer.Trace playbackTrace;
 
     protected EMNotification notificationHelper;
     protected EMLockScreen lockScreenHelper;
 
     private boolean pausedForFocusLoss = false;
+    private int progressPollDelay = 0;
     protected MediaState currentState = MediaState.PREPARING;
 
     protected I currentPlaylistItem;
@@ -148,6 +194,115 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         return null;
     }
 
+    /**
+     * Retrieves the dispatcher that the events are posted to, in addition to the bus
+     * (see {@link #getBus()}).  Unlike the bus it calls its subscribers directly, without
+     * reflection, and doesn't allocate when the progress is posted.  Like the bus'
+     * producers, new subscribers are informed of the latest state, item and progress.
+     *
+     * @return The dispatcher to post events to or null
+     */
+    @Nullable
+    protected EMEventDispatcher getEventDispatcher() {
+        return null;
+    }
+
+    /**
+     * Retrieves the policy that determines how much audio the player buffers.
+     * Override this to pick a profile that suits the device and the network
+     * (see {@link #isNetworkMetered()}).  When the network changes between metered and
+     * unmetered the policy is retrieved again, and used from the next item on.
+     *
+     * @return The buffer policy for the audio player
+     */
+    protected BufferPolicy getBufferPolicy() {
+        return BufferPolicy.DEFAULT;
+    }
+
+    /**
+     * Retrieves the cache that streamed audio is loaded through, so that replays
+     * don't need to download the same audio again.
+     *
+     * @return The cache or null if audio shouldn't be cached
+     */
+    @Nullable
+    protected MediaCache getMediaCache() {
+        return null;
+    }
+
+    /**
+     * Retrieves a stable id for the item, for use in the {@link MediaCache} keys.  Media urls
+     * often expire, so the id should not be derived from them.
+     *
+     * @param item The item to get the id for
+     * @return The id or null
+     */
+    @Nullable
+    protected String getMediaContentId(I item) {
+        return null;
+    }
+
+    /**
+     * Retrieves how long before the end of the current audio item the next item starts
+     * preparing on a second player.  When the current item completes the players are swapped,
+     * so the next item starts without waiting for its manifest, renderers and buffer.
+     *
+     * @return The time in milliseconds, or 0 to disable the preparation [default: 10000]
+     */
+    protected int getGaplessPreparationTime() {
+        return 10000;
+    }
+
+    /**
+     * Retrieves the number of bytes the audio buffers of the current and the next player
+     * may use together.  If preparing the next item would exceed this it is played the
+     * regular way instead (see {@link #getGaplessPreparationTime()}).
+     *
+     * @return The memory budget in bytes [default: a quarter of the maximum heap size]
+     */
+    protected long getPlaybackMemoryBudget() {
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Determines if a visible UI is following the playback progress, in which case the progress
+     * is polled at full rate (see {@link #updateProgressPoll()}).  By default these are the
+     * callbacks registered with {@link #registerCallback(EMPlaylistServiceCallback)} or
+     * {@link EMPlaylistManager#registerServiceCallbacks(EMPlaylistServiceCallback)}, which UIs
+     * should only keep registered while they are visible, and the progress subscribers of the
+     * dispatcher (see {@link #getEventDispatcher()}), after which {@link #updateProgressPoll()}
+     * should be called.  Bus subscribers can't be counted, so override this if a UI follows the
+     * progress through the bus.
+     *
+     * @return True if a visible UI needs the progress
+     */
+    protected boolean hasVisibleProgressSubscribers() {
+        M playlistManager = getMediaPlaylistManager();
+        for (EMPlaylistServiceCallback callback : callbackList) {
+            if (callback != playlistManager) {
+                return true;
+            }
+        }
+
+        if (playlistManager.hasServiceCallbacks()) {
+            return true;
+        }
+
+        EMEventDispatcher eventDispatcher = getEventDispatcher();
+        return eventDispatcher != null && eventDispatcher.getChannel(EMMediaProgressEvent.class).hasSubscribers();
+    }
+
+    /**
+     * Determines if the progress is needed while no visible UI follows it, such as by bus
+     * subscribers that can't be counted.  The progress is then polled about once a second.  The
+     * next item is prepared without the progress (see {@link #getGaplessPreparationTime()}).
+     *
+     * @return True if the progress should be polled in the background
+     */
+    protected boolean isBackgroundProgressNeeded() {
+        return getBus() != null;
+    }
+
     /**
      * Retrieves the continuity bits associated with the service.  These
      * are the bits returned by {@link #onStartCommand(Intent, int, int)} and can be
@@ -168,7 +323,29 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
      * @return True if the device currently has internet connectivity
      */
     protected boolean isNetworkAvailable() {
-        return true;
+        return connectivityMonitor == null || connectivityMonitor.isConnected();
+    }
+
+    /**
+     * Used to determine if the device is connected to a metered network, such as mobile data,
+     * where less should be loaded ahead of time (see {@link #getBufferPolicy()}).
+     *
+     * @return True if the current network connection is metered
+     */
+    protected boolean isNetworkMetered() {
+        return connectivityMonitor != null && connectivityMonitor.isMetered();
+    }
+
+    /**
+     * Called when the device connects to or disconnects from a network, or moves between a
+     * metered and an unmetered network.  The service has already resumed any playback that
+     * was waiting on the network by this point.
+     *
+     * @param connected True if the device has a network connection
+     * @param metered True if the connection is metered
+     */
+    protected void onConnectivityChanged(boolean connected, boolean metered) {
+        //Purposefully left blank
     }
 
     /**
@@ -182,6 +359,30 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         return false;
     }
 
+    /**
+     * Called when the server refused the url of the playlist item, which usually means its
+     * signature has expired.  Override this to resolve a fresh url for the item in the background,
+     * and call {@link #onMediaUrlRefreshed(EMPlaylistManager.PlaylistItem, boolean)} on the main
+     * thread when done.  Playback then resumes at the position it failed at.
+     *
+     * @param playlistItem The playlist item that needs a fresh url
+     * @return True if a refresh was started [default: false]
+     */
+    protected boolean refreshMediaUrl(I playlistItem) {
+        return false;
+    }
+
+    /**
+     * Informs the service that the refresh started by {@link #refreshMediaUrl(EMPlaylistManager.PlaylistItem)}
+     * has finished.  This must be called on the main thread.
+     *
+     * @param playlistItem The playlist item that was refreshed
+     * @param success True if the item now has a fresh url
+     */
+    protected final void onMediaUrlRefreshed(I playlistItem, boolean success) {
+        audioListener.onMediaUrlRefreshed(playlistItem, success);
+    }
+
     /**
      * Called when the media player has failed to play the current audio item.
      */
@@ -306,6 +507,33 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         return false;
     }
 
+    /**
+     * A generic method to determine the playback position of the current media.  This
+     * is published to the lock screen along with {@link #getPlaybackSpeed()}.
+     *
+     * @return The position in milliseconds or {@link PlaybackStateCompat#PLAYBACK_POSITION_UNKNOWN}
+     */
+    protected long getPlaybackPosition() {
+        if (currentItemIsAudio()) {
+            return audioPlayer != null ? audioPlayer.getCurrentPosition() : PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN;
+        } else if (currentItemIsVideo()) {
+            EMVideoView videoView = getMediaPlaylistManager().getVideoView();
+            return videoView != null ? videoView.getCurrentPosition() : PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN;
+        }
+
+        return PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN;
+    }
+
+    /**
+     * Retrieves the speed the media plays at, used by the lock screen to extrapolate
+     * the progress from the {@link #getPlaybackPosition()}
+     *
+     * @return The playback speed (1.0 for normal)
+     */
+    protected float getPlaybackSpeed() {
+        return 1.0f;
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -337,6 +565,7 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         getMediaPlaylistManager().unRegisterService();
         audioFocusHelper.abandonFocus();
         lockScreenHelper.release();
+        connectivityMonitor.stop();
 
         audioFocusHelper = null;
         notificationHelper = null;
@@ -360,10 +589,17 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         }
 
         if (EMRemoteActions.ACTION_START_SERVICE.equals(intent.getAction())) {
-            startItemPlayback();
-
+            //Read before starting the playback, a swap to the prepared next player is informed of being prepared right away
             seekToPosition = intent.getIntExtra(EMRemoteActions.ACTION_EXTRA_SEEK_POSITION, -1);
             immediatelyPause = intent.getBooleanExtra(EMRemoteActions.ACTION_EXTRA_START_PAUSED, false);
+
+            playbackTrace = PlaybackTracer.getTrace(intent.getLongExtra(EMRemoteActions.ACTION_EXTRA_TRACE_ID, 0));
+            PlaybackTracer.mark(playbackTrace, PlaybackTracer.Phase.SERVICE_START);
+            startItemPlayback();
+
+            //The trace is only followed by a player that prepares the requested audio item itself
+            PlaybackTracer.abandon(playbackTrace);
+            playbackTrace = null;
         } else {
             handleRemoteAction(intent.getAction(), intent.getExtras());
         }
@@ -392,6 +628,9 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
 
         if (!audioPlayer.isPlaying() && pausedForFocusLoss) {
             audioPlayer.start();
+
+            //Starting the player restarts its poll at whatever rate it had
+            updateProgressPoll();
         } else {
             audioPlayer.setVolume(1.0f, 1.0f); //reset the audio volume
         }
@@ -425,7 +664,8 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
      */
     @Override
     public boolean onProgressUpdated(EMMediaProgressEvent progressEvent) {
-        currentMediaProgress = progressEvent;
+        currentMediaProgress.publish(progressEvent);
+        updateNextAudioItem(progressEvent);
 
         for (EMPlaylistServiceCallback callback : callbackList) {
             if (callback.onProgressUpdated(progressEvent)) {
@@ -445,6 +685,7 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
     public void registerCallback(EMPlaylistServiceCallback callback) {
         if (callback != null) {
             callbackList.add(callback);
+            updateProgressPoll();
         }
     }
 
@@ -456,9 +697,57 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
     public void unRegisterCallback(EMPlaylistServiceCallback callback) {
         if (callback != null) {
             callbackList.remove(callback);
+            updateProgressPoll();
         }
     }
 
+    /**
+     * Starts, stops or changes the rate of the progress poll to match what currently needs the
+     * progress.  While audio is playing it is polled at full rate for visible UIs (see
+     * {@link #hasVisibleProgressSubscribers()}), about once a second when it is only needed in
+     * the background (see {@link #isBackgroundProgressNeeded()}), and not at all otherwise.  The
+     * wakeup for preparing the next item is rescheduled along with it.  This is called when the
+     * state or the registered callbacks change.
+     */
+    public void updateProgressPoll() {
+        updateGaplessPreparation();
+        if (audioPlayer == null) {
+            return;
+        }
+
+        int delay = 0;
+        if (currentState == MediaState.PLAYING && currentItemIsAudio()) {
+            if (hasVisibleProgressSubscribers()) {
+                delay = FOREGROUND_PROGRESS_POLL_DELAY;
+            } else if (isBackgroundProgressNeeded()) {
+                delay = BACKGROUND_PROGRESS_POLL_DELAY;
+            }
+        }
+
+        if (delay > 0) {
+            audioPlayer.setProgressPollDelay(delay);
+            audioPlayer.startProgressPoll(this);
+        } else {
+            audioPlayer.stopProgressPoll();
+        }
+
+        if (delay != progressPollDelay) {
+            progressPollDelay = delay;
+            Log.d(TAG, "Progress poll " + (delay > 0 ? "every " + delay + "ms" : "stopped") + ", "
+                    + audioPlayer.getProgressPollWakeupsPerMinute() + " wakeups per minute");
+        }
+    }
+
+    /**
+     * Retrieves how many times per minute the progress poll of the current audio player has
+     * woken up the main thread, to verify it isn't polled more than needed.
+     *
+     * @return The number of wakeups per minute
+     */
+    public int getProgressPollWakeupsPerMinute() {
+        return audioPlayer != null ? audioPlayer.getProgressPollWakeupsPerMinute() : 0;
+    }
+
     /**
      * Retrieves the current playback state of the service.
      *
@@ -469,15 +758,27 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
     }
 
     /**
-     * Retrieves the current playback progress.  If no
+     * Retrieves a copy of the current playback progress.  If no
      * {@link com.devbrackets.android.exomedia.manager.EMPlaylistManager.PlaylistItem} has been played
-     * then null will be returned.
+     * then null will be returned.  To avoid the allocation when reading the progress often use
+     * {@link #getCurrentMediaProgress(EMMediaProgressEvent)} instead.
      *
      * @return The current playback progress or null
      */
     @Nullable
     public EMMediaProgressEvent getCurrentMediaProgress() {
-        return currentMediaProgress;
+        return currentMediaProgress.getSnapshot();
+    }
+
+    /**
+     * Copies the current playback progress in to the event.  This can be called from any
+     * thread, and always provides a position, buffer percent and duration from the same update.
+     *
+     * @param event The event to update with the current progress
+     * @return True if the event was updated, false if no item has been played
+     */
+    public boolean getCurrentMediaProgress(EMMediaProgressEvent event) {
+        return currentMediaProgress.read(event);
     }
 
     /**
@@ -503,7 +804,12 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
      */
     protected void onServiceCreate() {
         audioFocusHelper = new EMAudioFocusHelper(getApplicationContext());
+        audioFocusHelper.setEventDispatcher(getEventDispatcher());
         wifiLock = ((WifiManager) getSystemService(Context.WIFI_SERVICE)).createWifiLock(WifiManager.WIFI_MODE_FULL, "mcLock");
+        wifiLock.setReferenceCounted(false);
+
+        connectivityMonitor = new ConnectivityMonitor(getApplicationContext());
+        connectivityMonitor.start(new ServiceConnectivityListener());
 
         notificationHelper = new EMNotification(getApplicationContext());
         lockScreenHelper = new EMLockScreen(getApplicationContext(), getClass());
@@ -643,7 +949,7 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
 
     /**
      * Informs the callbacks specified with {@link #registerCallback(EMPlaylistServiceCallback)}
-     * and posts a Bus event if {@link #getBus()} has been specified, that the current playlist item
+     * and posts an event to the bus and dispatcher if specified (see {@link #getBus()}), that the current playlist item
      * has changed.
      */
     protected void postPlaylistItemChanged() {
@@ -657,14 +963,22 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         }
 
         Bus bus = getBus();
-        if (bus != null) {
-            bus.post(new EMPlaylistItemChangedEvent<>(currentPlaylistItem, currentMediaType, hasPrevious, hasNext));
+        EMEventDispatcher eventDispatcher = getEventDispatcher();
+        if (bus != null || eventDispatcher != null) {
+            EMPlaylistItemChangedEvent<I> event = new EMPlaylistItemChangedEvent<>(currentPlaylistItem, currentMediaType, hasPrevious, hasNext);
+            if (bus != null) {
+                bus.post(event);
+            }
+
+            if (eventDispatcher != null) {
+                eventDispatcher.post(event);
+            }
         }
     }
 
     /**
      * Informs the callbacks specified with {@link #registerCallback(EMPlaylistServiceCallback)}
-     * and posts a Bus event if {@link #getBus()} has been specified, that the current media state
+     * and posts an event to the bus and dispatcher if specified (see {@link #getBus()}), that the current media state
      * has changed.
      */
     protected void postMediaStateChanged() {
@@ -675,8 +989,16 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         }
 
         Bus bus = getBus();
-        if (bus != null) {
-            bus.post(new EMMediaStateEvent(currentState));
+        EMEventDispatcher eventDispatcher = getEventDispatcher();
+        if (bus != null || eventDispatcher != null) {
+            EMMediaStateEvent event = new EMMediaStateEvent(currentState);
+            if (bus != null) {
+                bus.post(event);
+            }
+
+            if (eventDispatcher != null) {
+                eventDispatcher.post(event);
+            }
         }
     }
 
@@ -711,6 +1033,7 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         if (currentItemIsAudio()) {
             if (audioPlayer != null) {
                 audioPlayer.seekTo(position);
+                updateGaplessPreparation();
             }
         } else if (currentItemIsVideo()) {
             EMVideoView videoView = getMediaPlaylistManager().getVideoView();
@@ -718,6 +1041,9 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
                 videoView.seekTo(position);
             }
         }
+
+        //The lock screen extrapolates the progress, so it needs the new position
+        updateLockScreen();
     }
 
     /**
@@ -810,6 +1136,8 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         mediaItemChanged(currentPlaylistItem);
 
         if (currentItemIsAudio()) {
+            //The progress of the previous item must not be mistaken for that of the new one
+            currentMediaProgress.clear();
             audioListener.resetRetryCount();
             playAudioItem();
         } else if (currentItemIsVideo()) {
@@ -828,22 +1156,191 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
      */
     protected void playAudioItem() {
         stopVideoPlayback();
+        if (swapToNextAudioPlayer()) {
+            return;
+        }
+
         initializeAudioPlayer();
         audioFocusHelper.requestFocus();
 
         boolean isItemDownloaded = isDownloaded(currentPlaylistItem);
         audioPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        audioPlayer.setDataSource(this, Uri.parse(isItemDownloaded ? currentPlaylistItem.getDownloadedMediaUri() : currentPlaylistItem.getMediaUrl()));
+        audioPlayer.setDataSource(this, Uri.parse(isItemDownloaded ? currentPlaylistItem.getDownloadedMediaUri() : currentPlaylistItem.getMediaUrl()),
+                MediaUtil.MediaType.MP3, getMediaContentId(currentPlaylistItem));
+
+        //Only the player of the current item is traced, never the one preparing the next item
+        audioPlayer.setPlaybackTrace(playbackTrace);
+        playbackTrace = null;
 
         setMediaState(MediaState.PREPARING);
         setupAsForeground();
 
+        PlaybackTracer.mark(audioPlayer.getPlaybackTrace(), PlaybackTracer.Phase.ITEM_PLAYBACK);
         audioPlayer.prepareAsync();
+        updateWifiLock(isItemDownloaded);
+    }
+
+    /**
+     * Determines if the next audio item should be prepared on the second player, and discards
+     * the one that was prepared if the queue has changed since.
+     *
+     * @param progressEvent The progress of the current item
+     */
+    protected void updateNextAudioItem(EMMediaProgressEvent progressEvent) {
+        if (nextPlaylistItem != null && nextPlaylistItem != getMediaPlaylistManager().peekNext()) {
+            Log.d(TAG, "Queue changed, discarding the prepared next item");
+            releaseNextAudioPlayer();
+        }
 
-        // If we are streaming from the internet, we want to hold a Wifi lock, which prevents
-        // the Wifi radio from going to sleep while the song is playing. If, on the other hand,
-        // we are NOT streaming, we want to release the lock.
-        if (!isItemDownloaded) {
+        if (nextPlaylistItem != null || getGaplessPreparationTime() <= 0 || !currentItemIsAudio() || currentState != MediaState.PLAYING) {
+            return;
+        }
+
+        long duration = progressEvent.getDuration();
+        if (duration > 0 && duration - progressEvent.getPosition() <= getGaplessPreparationTime()) {
+            prepareNextAudioItem();
+        }
+    }
+
+    /**
+     * Schedules a single wakeup for when the next audio item should be prepared (see
+     * {@link #getGaplessPreparationTime()}), or prepares it right away if that time has passed.
+     * Nothing is scheduled while the current item isn't playing or the next one is already
+     * handled.  This is called when the state changes and after seeking.
+     */
+    private void updateGaplessPreparation() {
+        gaplessPreparationTask.cancel();
+        if (audioPlayer == null || nextPlaylistItem != null || getGaplessPreparationTime() <= 0 || !currentItemIsAudio()
+                || currentState != MediaState.PLAYING) {
+            return;
+        }
+
+        long duration = audioPlayer.getDuration();
+        if (duration <= 0) {
+            return;
+        }
+
+        long delay = duration - audioPlayer.getCurrentPosition() - getGaplessPreparationTime();
+        if (delay <= 0) {
+            prepareNextAudioItem();
+            return;
+        }
+
+        //The playback may stall before then, so the wakeup checks the position again
+        gaplessPreparationTask.setInterval(delay);
+        gaplessPreparationTask.setTimerSlack(GAPLESS_PREPARATION_SLACK);
+        gaplessPreparationTask.schedule();
+    }
+
+    /**
+     * Starts preparing the next item in the playlist on the second player, without playing it.
+     * The item is marked as handled even when it can't be prepared, so this is only attempted
+     * once per item.
+     */
+    protected void prepareNextAudioItem() {
+        I nextItem = getMediaPlaylistManager().peekNext();
+        if (nextItem == null) {
+            return;
+        }
+
+        nextPlaylistItem = nextItem;
+        boolean isItemDownloaded = isDownloaded(nextItem);
+        if (!nextItem.isAudio() || audioPlayer == null || (!isItemDownloaded && !isNetworkAvailable())) {
+            return;
+        }
+
+        //Both players keep their buffers until the swap, so they have to fit in the budget together
+        BufferPolicy bufferPolicy = getBufferPolicy();
+        long requiredMemory = (long) audioPlayer.getBufferPolicy().getAudioBufferSize() + bufferPolicy.getAudioBufferSize();
+        if (requiredMemory > getPlaybackMemoryBudget()) {
+            Log.d(TAG, "Not preparing the next item, " + requiredMemory + " bytes of buffers exceed the budget of " + getPlaybackMemoryBudget());
+            return;
+        }
+
+        NextAudioListener listener = new NextAudioListener();
+        nextAudioPlayer = createAudioPlayer(bufferPolicy);
+        nextAudioPlayer.setOnPreparedListener(listener);
+        nextAudioPlayer.setOnErrorListener(listener);
+        listener.player = nextAudioPlayer;
+
+        nextAudioPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        nextAudioPlayer.setDataSource(this, Uri.parse(isItemDownloaded ? nextItem.getDownloadedMediaUri() : nextItem.getMediaUrl()),
+                MediaUtil.MediaType.MP3, getMediaContentId(nextItem));
+        nextAudioPlayer.prepareAsync();
+    }
+
+    /**
+     * Releases the second player and forgets the item it was prepared for
+     */
+    protected void releaseNextAudioPlayer() {
+        discardNextAudioPlayer();
+        nextPlaylistItem = null;
+    }
+
+    /**
+     * Releases the second player, but keeps the item it was prepared for so that the
+     * preparation isn't attempted again
+     */
+    private void discardNextAudioPlayer() {
+        if (nextAudioPlayer != null) {
+            nextAudioPlayer.reset();
+            nextAudioPlayer.release();
+            nextAudioPlayer = null;
+        }
+
+        nextAudioPlayerPrepared = false;
+    }
+
+    /**
+     * Replaces the audio player with the second player if it was prepared for the current item.
+     * The old player is released, and if the new one has already finished preparing playback
+     * starts right away.
+     *
+     * @return True if the players were swapped
+     */
+    private boolean swapToNextAudioPlayer() {
+        if (nextAudioPlayer == null || nextPlaylistItem != currentPlaylistItem) {
+            return false;
+        }
+
+        boolean prepared = nextAudioPlayerPrepared;
+        EMAudioPlayer previousPlayer = audioPlayer;
+        audioPlayer = nextAudioPlayer;
+        nextAudioPlayer = null;
+        nextPlaylistItem = null;
+        nextAudioPlayerPrepared = false;
+
+        if (previousPlayer != null) {
+            previousPlayer.reset();
+            previousPlayer.release();
+        }
+
+        Log.d(TAG, "Swapped to the " + (prepared ? "prepared" : "preparing") + " next item");
+        attachAudioListeners(audioPlayer);
+        audioFocusHelper.requestFocus();
+        setMediaState(MediaState.PREPARING);
+        setupAsForeground();
+        updateWifiLock(isDownloaded(currentPlaylistItem));
+
+        //The listener missed the prepared notification, so it is informed here
+        if (prepared) {
+            audioListener.onPrepared(null);
+        }
+
+        return true;
+    }
+
+    /**
+     * If we are streaming from the internet, we want to hold a Wifi lock, which prevents
+     * the Wifi radio from going to sleep while the song is loading. If, on the other hand,
+     * we are NOT streaming, we want to release the lock.  When the player reports its loading
+     * the lock is only held during the loading bursts (see AudioListener#onLoadingChanged).  This
+     * must be called once the data source is set, since that decides if the loading is reported.
+     *
+     * @param isItemDownloaded True if the current item is played from a downloaded copy
+     */
+    private void updateWifiLock(boolean isItemDownloaded) {
+        if (!isItemDownloaded && !audioPlayer.isLoadingReported()) {
             wifiLock.acquire();
         } else if (wifiLock.isHeld()) {
             wifiLock.release();
@@ -919,6 +1416,9 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
             audioPlayer.start();
             onAudioPlaybackStarted(currentPlaylistItem, audioPlayer.getCurrentPosition(), audioPlayer.getDuration());
         }
+
+        //Starting the player restarts its poll at whatever rate it had
+        updateProgressPoll();
     }
 
     /**
@@ -932,6 +1432,8 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         stopForeground(true);
 
         if (releaseAudioPlayer) {
+            audioListener.resetRetryCount();
+            releaseNextAudioPlayer();
             if (audioPlayer != null) {
                 audioPlayer.reset();
                 audioPlayer.release();
@@ -953,6 +1455,7 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
      */
     protected void setMediaState(MediaState state) {
         currentState = state;
+        updateProgressPoll();
         postMediaStateChanged();
     }
 
@@ -996,9 +1499,12 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         notificationHelper.setNotificationsEnabled(true);
         notificationHelper.setNotificationBaseInformation(getNotificationId(), getNotificationIconRes(), getClass());
 
-        //Starts the service as the foreground audio player
-        startForeground(getNotificationId(), notificationHelper.getNotification(getNotificationClickPendingIntent()));
-        foregroundSetup = true;
+        //Starts the service as the foreground audio player, which posts the full notification, so
+        //once in the foreground the notification is only updated with what changed
+        if (!foregroundSetup) {
+            startForeground(getNotificationId(), notificationHelper.getNotification(getNotificationClickPendingIntent()));
+            foregroundSetup = true;
+        }
 
         updateLockScreen();
         updateNotification();
@@ -1038,7 +1544,8 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
 
     /**
      * Performs the process to update the playback controls and the background
-     * (artwork) image displayed on the lock screen.
+     * (artwork) image displayed on the lock screen.  This only needs to be called
+     * when the playback changes, the progress in between is extrapolated.
      */
     protected void updateLockScreen() {
         if (currentPlaylistItem == null || !foregroundSetup) {
@@ -1055,7 +1562,7 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
         //Finish up the update
         String title = getAppName();
         String subTitle = currentPlaylistItem.getTitle();
-        lockScreenHelper.updateLockScreenInformation(title, subTitle, getLockScreenArtwork(), mediaState);
+        lockScreenHelper.updateLockScreenInformation(title, subTitle, getLockScreenArtwork(), mediaState, getPlaybackPosition(), getPlaybackSpeed());
     }
 
     /**
@@ -1144,23 +1651,81 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
             return;
         }
 
-        audioPlayer = new EMAudioPlayer(getApplicationContext());
-        audioPlayer.setBus(getBus());
-        audioPlayer.startProgressPoll(this);
-        audioPlayer.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
+        audioPlayer = createAudioPlayer(getBufferPolicy());
+        attachAudioListeners(audioPlayer);
+    }
+
+    /**
+     * Creates an audio player without any listeners
+     *
+     * @param bufferPolicy The buffer policy for the player
+     * @return The new audio player
+     */
+    private EMAudioPlayer createAudioPlayer(BufferPolicy bufferPolicy) {
+        EMAudioPlayer player = new EMAudioPlayer(getApplicationContext(), bufferPolicy);
+        player.setMediaCache(getMediaCache());
+        player.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
+        return player;
+    }
+
+    /**
+     * Makes the player report to the service, as the player of the current item
+     *
+     * @param player The player to attach the listeners to
+     */
+    private void attachAudioListeners(EMAudioPlayer player) {
+        player.setBus(getBus());
+        player.setEventDispatcher(getEventDispatcher());
+        updateProgressPoll();
 
         //Sets the listeners
-        audioPlayer.setOnPreparedListener(audioListener);
-        audioPlayer.setOnCompletionListener(audioListener);
-        audioPlayer.setOnErrorListener(audioListener);
+        player.setOnPreparedListener(audioListener);
+        player.setOnCompletionListener(audioListener);
+        player.setOnErrorListener(audioListener);
+        player.setLoadingListener(audioListener);
+        player.setInternalErrorListener(audioListener);
     }
 
     /**
-     * A class to listen to the EMAudioPlayer events
+     * A class to listen to the EMAudioPlayer events.  Playback errors are recovered from
+     * depending on their type (see {@link ErrorClassifier}):
+     * <ul>
+     *     <li>Expired urls are refreshed (see {@link #refreshMediaUrl(EMPlaylistManager.PlaylistItem)})</li>
+     *     <li>Transient errors are retried with an exponential backoff</li>
+     *     <li>Fatal errors stop the playback right away</li>
+     * </ul>
+     * Playback resumes at the position it failed at.  Audio that was loaded through the
+     * {@link MediaCache} is read back from the cache instead of loaded again.  While the
+     * network is unavailable no retries are made, the recovery continues as soon as it returns.
      */
-    private class AudioListener implements MediaPlayer.OnPreparedListener, MediaPlayer.OnCompletionListener, MediaPlayer.OnErrorListener {
-        private static final int MAX_RETRY_COUNT = 1;
+    private class AudioListener implements MediaPlayer.OnPreparedListener, MediaPlayer.OnCompletionListener, MediaPlayer.OnErrorListener,
+            LoadingListener, InternalErrorListener {
+        private static final int MAX_RETRY_COUNT = 5;
+        private static final long INITIAL_RETRY_DELAY = 1000;
+        private static final long MAX_RETRY_DELAY = 30000;
+        private static final int MAX_URL_REFRESH_COUNT = 2;
+
+        private final Handler retryHandler = new Handler(Looper.getMainLooper());
         private int retryCount = 0;
+        private int urlRefreshCount = 0;
+        private long resumePosition = -1;
+
+        //The item a url refresh is in flight for, and whether the failed playback is waiting on it
+        private I refreshingItem;
+        private boolean awaitingRefresh = false;
+        private boolean urlRefreshed = false;
+
+        //Whether the failed playback is waiting on a scheduled retry, or on the network to return
+        private boolean retryPending = false;
+        private boolean awaitingNetwork = false;
+
+        private final Runnable retryRunnable = new Runnable() {
+            @Override
+            public void run() {
+                retryPending = false;
+                resumePlayback();
+            }
+        };
 
         @Override
         public void onCompletion(MediaPlayer mp) {
@@ -1179,11 +1744,39 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
                 return false;
             }
 
-            //The retry count is a workaround for when the EMAudioPlayer will occasionally fail to load valid content due to the MediaPlayer on pre 4.1 devices
-            if (++retryCount <= MAX_RETRY_COUNT) {
-                Log.d(TAG, "Retrying audio playback.  Retry count: " + retryCount);
-                playAudioItem();
-                return false;
+            Exception error = audioPlayer != null ? audioPlayer.getLastError() : null;
+            ErrorClassifier.ErrorType errorType = ErrorClassifier.classify(error);
+            Log.d(TAG, "Playback error (" + errorType + "): what=" + what + ", extra=" + extra, error);
+            rememberResumePosition();
+
+            //Retrying without a network would only use up the retries, so the recovery waits for it instead
+            if (errorType != ErrorClassifier.ErrorType.FATAL && !isNetworkAvailable() && !isDownloaded(currentPlaylistItem)) {
+                Log.d(TAG, "Network unavailable, waiting for it to return before retrying");
+                awaitingNetwork = true;
+                setMediaState(MediaState.RETRIEVING);
+                return true;
+            }
+
+            if (errorType == ErrorClassifier.ErrorType.EXPIRED_URL && (urlRefreshed || refreshUrl())) {
+                if (urlRefreshed) {
+                    urlRefreshed = false;
+                    resumePlayback();
+                } else {
+                    awaitingRefresh = true;
+                    setMediaState(MediaState.RETRIEVING);
+                }
+
+                return true;
+            }
+
+            if (errorType == ErrorClassifier.ErrorType.TRANSIENT && retryCount < MAX_RETRY_COUNT) {
+                long delay = Math.min(MAX_RETRY_DELAY, INITIAL_RETRY_DELAY << retryCount);
+                retryCount++;
+                Log.d(TAG, "Retrying audio playback in " + delay + "ms.  Retry count: " + retryCount);
+                setMediaState(MediaState.PREPARING);
+                retryPending = true;
+                retryHandler.postDelayed(retryRunnable, delay);
+                return true;
             }
 
             onMediaPlayerResetting();
@@ -1203,6 +1796,14 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
             }
 
             retryCount = 0;
+            resumePosition = -1;
+
+            //Seek to the correct position before starting, so the start of the item isn't heard
+            if (seekToPosition > 0) {
+                performSeek(seekToPosition);
+                seekToPosition = -1;
+            }
+
             setMediaState(MediaState.PLAYING);
             startAudioPlayer();
 
@@ -1214,17 +1815,217 @@ public abstract class EMPlaylistService<I extends EMPlaylistManager.PlaylistItem
                 }
             }
 
-            //Seek to the correct position
-            if (seekToPosition > 0) {
-                performSeek(seekToPosition);
-                seekToPosition = -1;
+            updateNotification();
+            updateLockScreen();
+        }
+
+        @Override
+        public void onLoadingChanged(boolean loading) {
+            if (loading && currentPlaylistItem != null && !isDownloaded(currentPlaylistItem)) {
+                wifiLock.acquire();
+            } else if (!loading && wifiLock.isHeld()) {
+                wifiLock.release();
+                if (audioPlayer != null) {
+                    Log.d(TAG, "Loading burst ended: " + audioPlayer.getBurstStats());
+                }
             }
+        }
 
-            updateNotification();
+        @Override
+        public void onLoadError(int sourceId, IOException e) {
+            //The player keeps retrying the load for a while before it gives up, refreshing the url
+            //right away means it is ready by then, while the buffered audio keeps playing
+            if (currentItemIsAudio() && ErrorClassifier.classify(e) == ErrorClassifier.ErrorType.EXPIRED_URL
+                    && refreshingItem == null && !urlRefreshed) {
+                Log.d(TAG, "Media url was refused, refreshing it");
+                refreshUrl();
+            }
+        }
+
+        @Override
+        public void onRendererInitializationError(Exception e) {
+            //Purposefully left blank
+        }
+
+        @Override
+        public void onAudioTrackInitializationError(AudioTrack.InitializationException e) {
+            //Purposefully left blank
+        }
+
+        @Override
+        public void onAudioTrackWriteError(AudioTrack.WriteException e) {
+            //Purposefully left blank
+        }
+
+        @Override
+        public void onDecoderInitializationError(MediaCodecTrackRenderer.DecoderInitializationException e) {
+            //Purposefully left blank
+        }
+
+        @Override
+        public void onCryptoError(MediaCodec.CryptoException e) {
+            //Purposefully left blank
         }
 
+        @Override
+        public void onDrmSessionManagerError(Exception e) {
+            //Purposefully left blank
+        }
+
+        public void onMediaUrlRefreshed(I playlistItem, boolean success) {
+            if (playlistItem != refreshingItem) {
+                return;
+            }
+
+            refreshingItem = null;
+            if (!awaitingRefresh) {
+                //The player hasn't given up on the old url yet, it will be resumed once it does
+                urlRefreshed = success;
+                return;
+            }
+
+            awaitingRefresh = false;
+            if (success) {
+                resumePlayback();
+            } else {
+                onError(null, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+            }
+        }
+
+        /**
+         * Resumes the playback that is waiting on the network or on a scheduled retry right away.
+         * Loads that failed while the player is still playing are left to the sample sources,
+         * which retry them by themselves without discarding what is already buffered.
+         */
+        public void onNetworkAvailable() {
+            if (!currentItemIsAudio()) {
+                return;
+            }
+
+            if (awaitingNetwork || retryPending) {
+                Log.d(TAG, "Network available, resuming playback");
+                retryHandler.removeCallbacks(retryRunnable);
+                awaitingNetwork = false;
+                retryPending = false;
+                resumePlayback();
+            }
+        }
+
+        /**
+         * Stops any recovery in progress and resets the retry counts for a new item
+         */
         public void resetRetryCount() {
+            retryHandler.removeCallbacks(retryRunnable);
             retryCount = 0;
+            urlRefreshCount = 0;
+            resumePosition = -1;
+            refreshingItem = null;
+            awaitingRefresh = false;
+            urlRefreshed = false;
+            retryPending = false;
+            awaitingNetwork = false;
+        }
+
+        /**
+         * Starts refreshing the url of the current item, unless that has been done too often
+         *
+         * @return True if a refresh is in flight
+         */
+        private boolean refreshUrl() {
+            if (refreshingItem != null) {
+                return refreshingItem == currentPlaylistItem;
+            }
+
+            if (urlRefreshCount >= MAX_URL_REFRESH_COUNT) {
+                return false;
+            }
+
+            urlRefreshCount++;
+            refreshingItem = currentPlaylistItem;
+            if (!refreshMediaUrl(currentPlaylistItem)) {
+                refreshingItem = null;
+                return false;
+            }
+
+            //The refresh may have already finished
+            return refreshingItem != null || urlRefreshed;
+        }
+
+        /**
+         * Keeps the position the playback failed at, and whether it was paused, so the
+         * recovery can continue from there
+         */
+        private void rememberResumePosition() {
+            //Only the first failure knows the position, the retries fail before they are prepared
+            if (resumePosition < 0 && audioPlayer != null) {
+                long position = audioPlayer.getCurrentPosition();
+                if (position <= 0) {
+                    position = currentMediaProgress.getPosition();
+                }
+
+                resumePosition = position;
+            }
+
+            if (currentState == MediaState.PAUSED) {
+                immediatelyPause = true;
+            }
+        }
+
+        private void resumePlayback() {
+            if (!currentItemIsAudio()) {
+                return;
+            }
+
+            playAudioItem();
+            if (resumePosition > 0) {
+                seekToPosition = (int) resumePosition;
+            }
+        }
+    }
+
+    /**
+     * A class to listen to the connectivity changes, resuming the playback that is waiting
+     * on the network and picking the buffer policy for the new network
+     */
+    private class ServiceConnectivityListener implements ConnectivityMonitor.ConnectivityListener {
+        @Override
+        public void onConnectivityChanged(boolean connected, boolean metered) {
+            //The buffer sizes can't change while an item is loading, so the policy only applies from the next item on;
+            //the current item keeps loading with the policy it was prepared with
+            if (audioPlayer != null) {
+                audioPlayer.setBufferPolicy(getBufferPolicy());
+            }
+
+            if (connected) {
+                audioListener.onNetworkAvailable();
+            }
+
+            EMPlaylistService.this.onConnectivityChanged(connected, metered);
+        }
+    }
+
+    /**
+     * A class to listen to the events of the player that the next item is prepared on
+     */
+    private class NextAudioListener implements MediaPlayer.OnPreparedListener, MediaPlayer.OnErrorListener {
+        private EMAudioPlayer player;
+
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            if (player == nextAudioPlayer) {
+                nextAudioPlayerPrepared = true;
+            }
+        }
+
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            //The next item will be played the regular way instead
+            if (player == nextAudioPlayer) {
+                Log.d(TAG, "Unable to prepare the next item: what=" + what + ", extra=" + extra);
+                discardNextAudioPlayer();
+            }
+
+            return false;
         }
     }
 
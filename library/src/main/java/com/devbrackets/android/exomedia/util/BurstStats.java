@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.util;
+
+import android.os.SystemClock;
+
+/**
+ * Keeps track of the periods the player spends loading media (bursts), which are the periods
+ * the radio has to be active for.  Comparing the radio active time to the play time, and the
+ * bytes loaded per burst, shows how well a {@link com.devbrackets.android.exomedia.BufferPolicy}
+ * lets the radio sleep.
+ * <p/>
+ * This should only be used on the main thread.
+ */
+public class BurstStats {
+    private boolean inBurst = false;
+    private long burstStartMs;
+    private long burstBytes;
+
+    private int burstCount = 0;
+    private long radioActiveMs = 0;
+    private long totalBytes = 0;
+    private long lastBurstMs = 0;
+    private long lastBurstBytes = 0;
+
+    /**
+     * Records the start of a burst.  If a burst is already in progress it is ended first.
+     */
+    public void onBurstStarted() {
+        if (inBurst) {
+            onBurstEnded();
+        }
+
+        inBurst = true;
+        burstStartMs = SystemClock.elapsedRealtime();
+        burstBytes = 0;
+    }
+
+    /**
+     * Records the end of the burst in progress, if any
+     */
+    public void onBurstEnded() {
+        if (!inBurst) {
+            return;
+        }
+
+        inBurst = false;
+        lastBurstMs = SystemClock.elapsedRealtime() - burstStartMs;
+        lastBurstBytes = burstBytes;
+        radioActiveMs += lastBurstMs;
+        burstCount++;
+    }
+
+    /**
+     * Records bytes that finished loading
+     *
+     * @param bytes The number of bytes loaded
+     */
+    public void onBytesLoaded(long bytes) {
+        burstBytes += bytes;
+        totalBytes += bytes;
+    }
+
+    public boolean isInBurst() {
+        return inBurst;
+    }
+
+    /**
+     * @return The number of bursts that have completed
+     */
+    public int getBurstCount() {
+        return burstCount;
+    }
+
+    /**
+     * @return The total time spent loading, including the burst in progress
+     */
+    public long getRadioActiveMs() {
+        return radioActiveMs + (inBurst ? SystemClock.elapsedRealtime() - burstStartMs : 0);
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getLastBurstMs() {
+        return lastBurstMs;
+    }
+
+    public long getLastBurstBytes() {
+        return lastBurstBytes;
+    }
+
+    /**
+     * @return The average number of bytes loaded per completed burst
+     */
+    public long getAverageBurstBytes() {
+        return burstCount == 0 ? 0 : (totalBytes - (inBurst ? burstBytes : 0)) / burstCount;
+    }
+
+    public void reset() {
+        inBurst = false;
+        burstCount = 0;
+        radioActiveMs = 0;
+        totalBytes = 0;
+        lastBurstMs = 0;
+        lastBurstBytes = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "bursts=" + burstCount + " radioActive=" + getRadioActiveMs() + "ms bytes=" + totalBytes
+                + " lastBurst=" + lastBurstBytes + "b/" + lastBurstMs + "ms avgBurst=" + getAverageBurstBytes() + "b";
+    }
+}
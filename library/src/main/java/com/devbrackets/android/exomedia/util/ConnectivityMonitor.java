@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.util;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.Nullable;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+/**
+ * Keeps track of whether the device has a network connection, and whether that connection
+ * is metered (e.g. mobile data).  The state is read when the monitor is created and updated
+ * from the connectivity broadcasts while it is started.
+ * <p/>
+ * <b>NOTE:</b> the application must request the <code>android.permission.ACCESS_NETWORK_STATE</code>
+ * permission.
+ */
+public class ConnectivityMonitor {
+    private static final String TAG = "ConnectivityMonitor";
+
+    public interface ConnectivityListener {
+        /**
+         * Called on the main thread when the device connects to or disconnects from a network,
+         * or moves between a metered and an unmetered network
+         *
+         * @param connected True if the device has a network connection
+         * @param metered True if the connection is metered
+         */
+        void onConnectivityChanged(boolean connected, boolean metered);
+    }
+
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    private ConnectivityListener listener;
+
+    //Read from other threads (e.g. downloads checking whether they may continue)
+    private volatile boolean connected;
+    private volatile boolean metered;
+    private boolean started = false;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            update();
+        }
+    };
+
+    /**
+     * @param context The context to register for the connectivity broadcasts with
+     */
+    public ConnectivityMonitor(Context context) {
+        this.context = context.getApplicationContext();
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        readState();
+    }
+
+    /**
+     * Starts listening for connectivity changes.  The listener is only informed of changes
+     * after this point, the current state is available from {@link #isConnected()} and
+     * {@link #isMetered()}.
+     *
+     * @param listener The listener to inform of changes, or null
+     */
+    public void start(@Nullable ConnectivityListener listener) {
+        this.listener = listener;
+        if (started) {
+            return;
+        }
+
+        started = true;
+        readState();
+        context.registerReceiver(receiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Stops listening for connectivity changes
+     */
+    public void stop() {
+        listener = null;
+        if (!started) {
+            return;
+        }
+
+        started = false;
+        context.unregisterReceiver(receiver);
+    }
+
+    /**
+     * @return True if the device has a network connection
+     */
+    public boolean isConnected() {
+        if (!started) {
+            readState();
+        }
+
+        return connected;
+    }
+
+    /**
+     * @return True if the current connection is metered.  When there is no connection this is false.
+     */
+    public boolean isMetered() {
+        if (!started) {
+            readState();
+        }
+
+        return metered;
+    }
+
+    private void update() {
+        boolean wasConnected = connected;
+        boolean wasMetered = metered;
+        readState();
+
+        if (wasConnected == connected && wasMetered == metered) {
+            return;
+        }
+
+        Log.d(TAG, "Connectivity changed: connected=" + connected + " metered=" + metered);
+        if (listener != null) {
+            listener.onConnectivityChanged(connected, metered);
+        }
+    }
+
+    private void readState() {
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        connected = networkInfo != null && networkInfo.isConnected();
+        metered = connected && ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+}
@@ -21,6 +21,7 @@ import android.media.AudioManager;
 import android.support.annotation.Nullable;
 
 import com.devbrackets.android.exomedia.event.EMAudioFocusGainedEvent;
+import com.devbrackets.android.exomedia.event.EMEventDispatcher;
 import com.devbrackets.android.exomedia.event.EMAudioFocusLostEvent;
 import com.devbrackets.android.exomedia.listener.EMAudioFocusCallback;
 import com.squareup.otto.Bus;
@@ -38,6 +39,7 @@ public class EMAudioFocusHelper {
     }
 
     private Bus bus;
+    private EMEventDispatcher eventDispatcher;
     private AudioManager audioManager;
     private EMAudioFocusCallback callbacks;
     private AudioFocusListener audioFocusListener = new AudioFocusListener();
@@ -65,6 +67,15 @@ public class EMAudioFocusHelper {
         this.bus = bus;
     }
 
+    /**
+     * Sets the dispatcher to post the focus events to, in addition to the bus
+     *
+     * @param eventDispatcher The dispatcher or null
+     */
+    public void setEventDispatcher(@Nullable EMEventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+    }
+
     /**
      * Sets the AudioFocusCallback to inform of focus changes.
      *
@@ -145,8 +156,8 @@ public class EMAudioFocusHelper {
                 return;
             }
 
-            if (bus != null) {
-                bus.post(new EMAudioFocusGainedEvent());
+            if (bus != null || eventDispatcher != null) {
+                postEvent(new EMAudioFocusGainedEvent());
             }
         }
 
@@ -155,8 +166,18 @@ public class EMAudioFocusHelper {
                 return;
             }
 
+            if (bus != null || eventDispatcher != null) {
+                postEvent(new EMAudioFocusLostEvent(canDuck));
+            }
+        }
+
+        private void postEvent(Object event) {
             if (bus != null) {
-                bus.post(new EMAudioFocusLostEvent(canDuck));
+                bus.post(event);
+            }
+
+            if (eventDispatcher != null) {
+                eventDispatcher.post(event);
             }
         }
     }
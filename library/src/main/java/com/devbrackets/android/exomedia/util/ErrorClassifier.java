@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.util;
+
+import android.support.annotation.Nullable;
+
+import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+
+import java.io.IOException;
+
+/**
+ * A Utility class to determine how a playback or load error can be recovered from
+ */
+public class ErrorClassifier {
+    private static final int MAX_CAUSE_DEPTH = 10;
+
+    public enum ErrorType {
+        EXPIRED_URL,   // The server refused the url, most likely because its signature expired.  A fresh url should work
+        TRANSIENT,     // A network problem that is likely to go away by itself, worth retrying
+        FATAL          // The media can't be played, retrying won't help
+    }
+
+    private ErrorClassifier() {
+        //Purposefully left blank
+    }
+
+    /**
+     * Determines how the error can be recovered from by looking through its causes for
+     * the http response code or the type of failure
+     *
+     * @param error The error, or null if the player didn't provide one
+     * @return The type of the error.  Errors without any information (such as those from the
+     * MediaPlayer) are considered {@link ErrorType#TRANSIENT}
+     */
+    public static ErrorType classify(@Nullable Throwable error) {
+        if (error == null) {
+            return ErrorType.TRANSIENT;
+        }
+
+        //The specific failures are looked for first, since they are usually wrapped in more generic ones
+        boolean isIOError = false;
+        Throwable cause = error;
+        for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (cause instanceof HttpDataSource.InvalidResponseCodeException) {
+                return classifyResponseCode(((HttpDataSource.InvalidResponseCodeException) cause).responseCode);
+            }
+
+            if (cause instanceof HttpDataSource.InvalidContentTypeException || cause instanceof ParserException) {
+                return ErrorType.FATAL;
+            }
+
+            isIOError |= cause instanceof IOException;
+            cause = cause.getCause() == cause ? null : cause.getCause();
+        }
+
+        return isIOError ? ErrorType.TRANSIENT : ErrorType.FATAL;
+    }
+
+    /**
+     * Determines how a failed http request can be recovered from
+     *
+     * @param responseCode The http response code
+     * @return The type of the error
+     */
+    public static ErrorType classifyResponseCode(int responseCode) {
+        if (responseCode == 403 || responseCode == 410) {
+            return ErrorType.EXPIRED_URL;
+        }
+
+        if (responseCode == 408 || responseCode == 429 || responseCode >= 500) {
+            return ErrorType.TRANSIENT;
+        }
+
+        return ErrorType.FATAL;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.util;
+
+import android.support.annotation.Nullable;
+
+import com.devbrackets.android.exomedia.event.EMMediaProgressEvent;
+
+/**
+ * Holds the latest media progress so it can be read from any thread without allocating.
+ * The position, buffer percent and duration are published together under a sequence number
+ * (a seqlock): the sequence is odd while a publish is in progress, and readers retry until
+ * they have read all three values within the same even sequence.  This way a reader always
+ * gets a consistent snapshot, and neither the publisher nor the readers allocate.
+ * <p/>
+ * The {@link EMMediaProgressEvent}s the players pass to their callbacks are re-used for every
+ * update, so anything that keeps the progress past the callback should copy it out of a
+ * holder with {@link #read(EMMediaProgressEvent)} instead of keeping the event.
+ */
+public class MediaProgressHolder {
+    private volatile long sequence = 0;
+
+    //These are volatile so their reads can't be moved outside of the sequence checks
+    private volatile boolean published = false;
+    private volatile long position;
+    private volatile int bufferPercent;
+    private volatile long duration;
+
+    /**
+     * Publishes a new progress, replacing the previous one
+     *
+     * @param position The playback position in milliseconds
+     * @param bufferPercent The percent of the media that has been buffered
+     * @param duration The duration of the media in milliseconds
+     */
+    public synchronized void publish(long position, int bufferPercent, long duration) {
+        sequence++;
+        this.position = position;
+        this.bufferPercent = bufferPercent;
+        this.duration = duration;
+        published = true;
+        sequence++;
+    }
+
+    /**
+     * Publishes the values of the event, replacing the previous progress
+     *
+     * @param event The progress to publish
+     */
+    public void publish(EMMediaProgressEvent event) {
+        publish(event.getPosition(), event.getBufferPercent(), event.getDuration());
+    }
+
+    /**
+     * Copies a consistent snapshot of the latest progress in to the event
+     *
+     * @param event The event to update with the latest progress
+     * @return True if the event was updated, false if nothing has been published yet
+     */
+    public boolean read(EMMediaProgressEvent event) {
+        while (true) {
+            long startSequence = sequence;
+
+            //A publish is in progress, it only takes a few writes
+            if ((startSequence & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+
+            boolean readPublished = published;
+            long readPosition = position;
+            int readBufferPercent = bufferPercent;
+            long readDuration = duration;
+            if (sequence == startSequence) {
+                if (readPublished) {
+                    event.update(readPosition, readBufferPercent, readDuration);
+                }
+
+                return readPublished;
+            }
+        }
+    }
+
+    /**
+     * Retrieves a copy of the latest progress.  This allocates, so it shouldn't be used for
+     * every update (see {@link #read(EMMediaProgressEvent)}).
+     *
+     * @return The latest progress or null if nothing has been published yet
+     */
+    @Nullable
+    public EMMediaProgressEvent getSnapshot() {
+        EMMediaProgressEvent event = new EMMediaProgressEvent(0, 0, 0);
+        return read(event) ? event : null;
+    }
+
+    /**
+     * @return The latest playback position in milliseconds, or 0 if nothing has been published yet
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Retrieves the sequence number of the latest progress, which changes with every publish.
+     * This can be used to skip reading a progress that hasn't changed.
+     *
+     * @return The sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Forgets the published progress, e.g. when the media changes
+     */
+    public synchronized void clear() {
+        sequence++;
+        published = false;
+        position = 0;
+        bufferPercent = 0;
+        duration = 0;
+        sequence++;
+    }
+}
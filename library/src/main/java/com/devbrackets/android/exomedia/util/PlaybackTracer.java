@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.util;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each phase of getting from a play request to audible playback takes.
+ * A trace is started with {@link #begin(String)} and the code along the way marks the end
+ * of each {@link Phase} with {@link #mark(Trace, Phase)}.  When the player first reports it is ready
+ * the trace is completed, kept as the {@link #getLastTrace() last trace} and its phase durations
+ * are added to rolling windows that can be summarized as percentiles with {@link #dump()}.
+ * <p/>
+ * A trace is handed along with the request it follows (from the share, to the service, to the
+ * player of the item) and only marked by whoever holds it, so a player that isn't playing the
+ * requested item (e.g. one preparing the next item) never records in to it.  Whoever holds the
+ * trace when the request ends without playback should {@link #abandon(Trace) abandon} it.
+ * <p/>
+ * Only a single trace is active at a time; beginning a new trace abandons the previous one
+ * and marks made on a trace that is no longer active are ignored.
+ */
+public final class PlaybackTracer {
+    private static final String TAG = "PlaybackTracer";
+    private static final int WINDOW_SIZE = 100;
+    private static final int[] PERCENTILES = new int[]{50, 90, 99};
+
+    /**
+     * The phases of a play request, in the order they complete.  The duration
+     * of a phase is the time between its mark and the mark of the previous phase.
+     */
+    public enum Phase {
+        BEGIN,
+        EXTRACT,
+        RESOLVE_HEADERS,
+        RESOLVE_PARSE,
+        SERVICE_START,
+        ITEM_PLAYBACK,
+        MANIFEST_FETCH,
+        BUILD_RENDERERS,
+        RENDERERS_PREPARED,
+        READY
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final long[][] windows = new long[PHASES.length][WINDOW_SIZE];
+    private static final int[] windowCounts = new int[PHASES.length];
+    private static int completedTraces = 0;
+    private static long nextTraceId = 1;
+
+    private static Trace currentTrace;
+    private static Trace lastTrace;
+
+    private PlaybackTracer() {
+    }
+
+    /**
+     * Starts tracing a new play request, abandoning any trace in progress.
+     *
+     * @param name A name to identify the request in logs (e.g. the video id)
+     * @return The new trace
+     */
+    public static Trace begin(String name) {
+        return begin(name, System.nanoTime());
+    }
+
+    /**
+     * Starts tracing a new play request that began at a time that has already passed,
+     * abandoning any trace in progress.
+     *
+     * @param name A name to identify the request in logs (e.g. the video id)
+     * @param startNanoTime The {@link System#nanoTime()} at which the request began
+     * @return The new trace
+     */
+    public static synchronized Trace begin(String name, long startNanoTime) {
+        currentTrace = new Trace(nextTraceId++, name);
+        currentTrace.marks[Phase.BEGIN.ordinal()] = startNanoTime;
+        return currentTrace;
+    }
+
+    /**
+     * Retrieves the trace in progress if it has the id, used to hand a trace along
+     * where only primitives can be passed (e.g. in an Intent)
+     *
+     * @param id The id of the trace (see {@link Trace#getId()})
+     * @return The trace or null if it is no longer in progress
+     */
+    @Nullable
+    public static synchronized Trace getTrace(long id) {
+        return currentTrace != null && currentTrace.id == id ? currentTrace : null;
+    }
+
+    /**
+     * Marks the end of the phase for the trace.  Phases that have already been marked, and
+     * marks for a trace that is no longer in progress, are ignored.
+     *
+     * @param trace The trace to mark or null
+     * @param phase The phase that just finished
+     */
+    public static void mark(@Nullable Trace trace, Phase phase) {
+        mark(trace, phase, System.nanoTime());
+    }
+
+    /**
+     * Marks the end of the phase for the trace at a time that has already passed,
+     * e.g. one recorded on another thread.
+     *
+     * @param trace The trace to mark or null
+     * @param phase The phase that finished
+     * @param nanoTime The {@link System#nanoTime()} at which the phase finished
+     */
+    public static synchronized void mark(@Nullable Trace trace, Phase phase, long nanoTime) {
+        if (trace == null || trace != currentTrace || trace.marks[phase.ordinal()] != 0) {
+            return;
+        }
+
+        trace.marks[phase.ordinal()] = nanoTime;
+        if (phase == Phase.READY) {
+            complete(trace);
+            currentTrace = null;
+        }
+    }
+
+    /**
+     * Abandons the trace without recording it.  This does nothing if the trace
+     * was already completed or replaced by a newer one.
+     *
+     * @param trace The trace to abandon or null
+     */
+    public static synchronized void abandon(@Nullable Trace trace) {
+        if (trace != null && trace == currentTrace) {
+            currentTrace = null;
+        }
+    }
+
+    /**
+     * Retrieves the most recently completed trace
+     *
+     * @return The last trace or null
+     */
+    @Nullable
+    public static synchronized Trace getLastTrace() {
+        return lastTrace;
+    }
+
+    /**
+     * Summarizes the phase durations of the recently completed traces as percentiles.
+     *
+     * @return A human readable summary
+     */
+    public static synchronized String dump() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("traces=").append(completedTraces);
+        if (lastTrace != null) {
+            builder.append("\nlast: ").append(lastTrace);
+        }
+
+        for (int i = 1; i < PHASES.length; i++) {
+            int count = Math.min(windowCounts[i], WINDOW_SIZE);
+            if (count == 0) {
+                continue;
+            }
+
+            long[] sorted = Arrays.copyOf(windows[i], count);
+            Arrays.sort(sorted);
+            builder.append('\n').append(PHASES[i].name()).append(':');
+            for (int percentile : PERCENTILES) {
+                int index = Math.min(count - 1, (count * percentile) / 100);
+                builder.append(" p").append(percentile).append('=').append(TimeUnit.NANOSECONDS.toMillis(sorted[index])).append("ms");
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Writes {@link #dump()} to the log
+     */
+    public static void log() {
+        Log.d(TAG, dump());
+    }
+
+    private static void complete(Trace trace) {
+        lastTrace = trace;
+        completedTraces++;
+
+        for (int i = 1; i < PHASES.length; i++) {
+            long duration = trace.getPhaseNanos(PHASES[i]);
+            if (duration >= 0) {
+                windows[i][windowCounts[i] % WINDOW_SIZE] = duration;
+                windowCounts[i]++;
+            }
+        }
+
+        Log.d(TAG, trace.toString());
+    }
+
+    /**
+     * The record of a single play request
+     */
+    public static class Trace {
+        private final long id;
+        private String name;
+        private final long[] marks = new long[PHASES.length];
+
+        private Trace(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Retrieves the duration of the phase, measured from the previously marked phase.
+         *
+         * @param phase The phase to get the duration for
+         * @return The duration in milliseconds or -1 if the phase was not marked
+         */
+        public long getPhaseMillis(Phase phase) {
+            long nanos = getPhaseNanos(phase);
+            return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        /**
+         * @return The time from the start of the trace until the player was ready, or -1 if it never was
+         */
+        public long getTotalMillis() {
+            long ready = marks[Phase.READY.ordinal()];
+            return ready == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(ready - marks[Phase.BEGIN.ordinal()]);
+        }
+
+        private long getPhaseNanos(Phase phase) {
+            int index = phase.ordinal();
+            if (index == 0 || marks[index] == 0) {
+                return -1;
+            }
+
+            //Phases that were skipped (e.g. the network resolve on a cache hit) are folded into the next one
+            int previous = index - 1;
+            while (previous > 0 && marks[previous] == 0) {
+                previous--;
+            }
+
+            return marks[index] - marks[previous];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(name).append(" total=").append(getTotalMillis()).append("ms");
+            for (int i = 1; i < PHASES.length; i++) {
+                long millis = getPhaseMillis(PHASES[i]);
+                if (millis >= 0) {
+                    builder.append(' ').append(PHASES[i].name()).append('=').append(millis).append("ms");
+                }
+            }
+
+            return builder.toString();
+        }
+    }
+}
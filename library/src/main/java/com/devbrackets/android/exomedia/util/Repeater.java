@@ -17,27 +17,32 @@
 package com.devbrackets.android.exomedia.util;
 
 import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 
 /**
  * A method repeater to easily perform update functions on a timed basis.
  * <b>NOTE:</b> the duration between repeats may not be exact.  If you require an exact
  * amount of elapsed time use the {@link StopWatch} instead.
+ * <p/>
+ * The repeats are run by a {@link TimerScheduler}, which is shared with the other repeaters
+ * and stopwatches on the same thread so that they wake it up together.
  */
 public class Repeater {
-    private static final String HANDLER_THREAD_NAME = "ExoMedia_Repeater_HandlerThread";
     private static final int DEFAULT_REPEAT_DELAY = 33; // ~30 fps
+    private static final long WAKEUP_WINDOW = 60000;
 
     private volatile boolean repeaterRunning = false;
     private int repeatDelay = DEFAULT_REPEAT_DELAY;
 
-    private Handler delayedHandler;
-    private HandlerThread handlerThread;
-    private boolean useHandlerThread = false;
+    private final TimerScheduler.Task pollTask;
 
     private RepeatListener listener;
-    private PollRunnable pollRunnable = new PollRunnable();
+
+    //The wakeups counted in the current window, and the rate of the last completed window
+    private long wakeupWindowStart = -1;
+    private int wakeupWindowCount;
+    private int wakeupsPerMinute;
 
     public Repeater() {
         this(true);
@@ -47,28 +52,43 @@ public class Repeater {
      * @param processOnStartingThread True if the repeating process should be handled on the same thread that created the Repeater
      */
     public Repeater(boolean processOnStartingThread) {
-        if (processOnStartingThread) {
-            delayedHandler = new Handler();
-            return;
-        }
-
-        useHandlerThread = true;
+        this(processOnStartingThread ? TimerScheduler.getCurrentThreadScheduler() : TimerScheduler.getBackgroundScheduler());
     }
 
     /**
-     * @param handler The Handler to use for the repeating process
+     * @param handler The Handler whose thread to use for the repeating process
      */
     public Repeater(Handler handler) {
-        delayedHandler = handler;
+        this(TimerScheduler.getScheduler(handler.getLooper()));
     }
 
     /**
-     * Sets the amount of time between method invocation.
+     * @param scheduler The scheduler to run the repeating process with
+     */
+    public Repeater(TimerScheduler scheduler) {
+        pollTask = scheduler.createTask(new PollRunnable());
+        pollTask.setInterval(repeatDelay);
+    }
+
+    /**
+     * Sets the amount of time between method invocation.  If the repeater is running and
+     * the delay is shortened, the next invocation is moved up to match.
      *
      * @param milliSeconds The time between method calls [default: {@value #DEFAULT_REPEAT_DELAY}]
      */
     public void setRepeaterDelay(int milliSeconds) {
         repeatDelay = milliSeconds;
+        pollTask.setInterval(milliSeconds);
+    }
+
+    /**
+     * Sets how much later than the delay the method may be invoked, so that the repeater can
+     * share the wakeup with other timers
+     *
+     * @param milliSeconds The timer slack [default: 0]
+     */
+    public void setTimerSlack(int milliSeconds) {
+        pollTask.setTimerSlack(milliSeconds);
     }
 
     /**
@@ -86,14 +106,7 @@ public class Repeater {
     public void start() {
         if (!repeaterRunning) {
             repeaterRunning = true;
-
-            if (useHandlerThread) {
-                handlerThread = new HandlerThread(HANDLER_THREAD_NAME);
-                handlerThread.start();
-                delayedHandler = new Handler(handlerThread.getLooper());
-            }
-
-            pollRunnable.performPoll();
+            pollTask.schedule();
         }
     }
 
@@ -101,10 +114,7 @@ public class Repeater {
      * Stops the repeater
      */
     public void stop() {
-        if (handlerThread != null) {
-            handlerThread.quit();
-        }
-
+        pollTask.cancel();
         repeaterRunning = false;
     }
 
@@ -117,6 +127,39 @@ public class Repeater {
         return repeaterRunning;
     }
 
+    /**
+     * Retrieves the number of times the repeater ran per minute, averaged over the last minute
+     * it was counted for.  Runs that share a wakeup with other timers are still counted.  Time the repeater spent stopped counts as time
+     * without wakeups.
+     *
+     * @return The number of wakeups per minute
+     */
+    public synchronized int getWakeupsPerMinute() {
+        if (wakeupWindowStart < 0) {
+            return 0;
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - wakeupWindowStart;
+        if (elapsed >= WAKEUP_WINDOW || wakeupsPerMinute == 0) {
+            return (int) (wakeupWindowCount * WAKEUP_WINDOW / Math.max(1, elapsed));
+        }
+
+        return wakeupsPerMinute;
+    }
+
+    private synchronized void countWakeup() {
+        long now = SystemClock.elapsedRealtime();
+        if (wakeupWindowStart < 0) {
+            wakeupWindowStart = now;
+        } else if (now - wakeupWindowStart >= WAKEUP_WINDOW) {
+            wakeupsPerMinute = (int) (wakeupWindowCount * WAKEUP_WINDOW / (now - wakeupWindowStart));
+            wakeupWindowStart = now;
+            wakeupWindowCount = 0;
+        }
+
+        wakeupWindowCount++;
+    }
+
     /**
      * Sets the listener to be notified for each repeat
      *
@@ -133,17 +176,10 @@ public class Repeater {
     private class PollRunnable implements Runnable {
         @Override
         public void run() {
+            countWakeup();
             if (listener != null) {
                 listener.onRepeat();
             }
-
-            if (repeaterRunning) {
-                performPoll();
-            }
-        }
-
-        public void performPoll() {
-            delayedHandler.postDelayed(pollRunnable, repeatDelay);
         }
     }
 }
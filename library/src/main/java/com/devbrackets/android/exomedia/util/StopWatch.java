@@ -18,26 +18,25 @@
 package com.devbrackets.android.exomedia.util;
 
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.support.annotation.Nullable;
 
 /**
  * A simple stopwatch to keep a correct and updated record of the running duration
  * of processes.
+ * <p/>
+ * The ticks are run by a {@link TimerScheduler}, which is shared with the other stopwatches
+ * and repeaters on the same thread.  A stopwatch without a {@link TickListener} doesn't tick
+ * at all, {@link #getTime()} is calculated when it is called.
  */
 public class StopWatch {
-    private static final String HANDLER_THREAD_NAME = "ExoMedia_StopWatch_HandlerThread";
     private static final int DEFAULT_TICK_DELAY = 33; // ~30 fps
 
     private volatile boolean isRunning = false;
     private int tickDelay = DEFAULT_TICK_DELAY;
 
-    private Handler delayedHandler;
-    private HandlerThread handlerThread;
-    private boolean useHandlerThread = false;
+    private final TimerScheduler.Task tickTask;
 
-    private TickListener listener;
-    private TickRunnable tickRunnable = new TickRunnable();
+    private volatile TickListener listener;
 
     private long startTime = 0;
     private long currentTime = 0;
@@ -51,19 +50,22 @@ public class StopWatch {
      * @param processOnStartingThread True if the repeating process should be handled on the same thread that created the Repeater
      */
     public StopWatch(boolean processOnStartingThread) {
-        if (processOnStartingThread) {
-            delayedHandler = new Handler();
-            return;
-        }
-
-        useHandlerThread = true;
+        this(processOnStartingThread ? TimerScheduler.getCurrentThreadScheduler() : TimerScheduler.getBackgroundScheduler());
     }
 
     /**
-     * @param handler The Handler to use for the repeating process
+     * @param handler The Handler whose thread to use for the repeating process
      */
     public StopWatch(Handler handler) {
-        delayedHandler = handler;
+        this(TimerScheduler.getScheduler(handler.getLooper()));
+    }
+
+    /**
+     * @param scheduler The scheduler to run the time updates with
+     */
+    public StopWatch(TimerScheduler scheduler) {
+        tickTask = scheduler.createTask(new TickRunnable());
+        tickTask.setInterval(tickDelay);
     }
 
     /**
@@ -73,6 +75,17 @@ public class StopWatch {
      */
     public void setTickDelay(int milliSeconds) {
         tickDelay = milliSeconds;
+        tickTask.setInterval(milliSeconds);
+    }
+
+    /**
+     * Sets how much later than the tick delay a time update may be made, so that the stopwatch
+     * can share the wakeup with other timers
+     *
+     * @param milliSeconds The timer slack [default: 0]
+     */
+    public void setTimerSlack(int milliSeconds) {
+        tickTask.setTimerSlack(milliSeconds);
     }
 
     /**
@@ -96,14 +109,9 @@ public class StopWatch {
         isRunning = true;
         startTime = System.currentTimeMillis();
 
-        if (useHandlerThread) {
-            handlerThread = new HandlerThread(HANDLER_THREAD_NAME);
-            handlerThread.start();
-            delayedHandler = new Handler(handlerThread.getLooper());
+        if (listener != null) {
+            tickTask.schedule();
         }
-
-        tickRunnable.performTick();
-
     }
 
     /**
@@ -114,10 +122,7 @@ public class StopWatch {
             return;
         }
 
-        delayedHandler.removeCallbacksAndMessages(null);
-        if (handlerThread != null) {
-            handlerThread.quit();
-        }
+        tickTask.cancel();
 
         isRunning = false;
         currentTime = 0;
@@ -160,6 +165,10 @@ public class StopWatch {
      * @return The time in milliseconds
      */
     public long getTime() {
+        if (isRunning) {
+            currentTime = System.currentTimeMillis() - startTime;
+        }
+
         return currentTime + storedTime;
     }
 
@@ -170,6 +179,13 @@ public class StopWatch {
      */
     public void setTickListener(@Nullable TickListener listener) {
         this.listener = listener;
+
+        //Only a listener needs the ticks
+        if (listener == null) {
+            tickTask.cancel();
+        } else if (isRunning) {
+            tickTask.schedule();
+        }
     }
 
     public interface TickListener {
@@ -181,17 +197,10 @@ public class StopWatch {
         public void run() {
             currentTime = System.currentTimeMillis() - startTime;
 
-            if (isRunning) {
-                performTick();
-            }
-
-            if (listener != null) {
-                listener.onStopWatchTick(currentTime + storedTime);
+            TickListener tickListener = listener;
+            if (tickListener != null) {
+                tickListener.onStopWatchTick(currentTime + storedTime);
             }
         }
-
-        public void performTick() {
-            delayedHandler.postDelayed(tickRunnable, tickDelay);
-        }
     }
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.util;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Runs periodic tasks (such as those of the {@link Repeater} and {@link StopWatch}) on a single
+ * looper with a single pending message, instead of each task posting its own.  When the looper
+ * wakes up, every task that is due within the coalescing window is run together, and a task
+ * may be delayed by up to its timer slack so that it can run together with the others.
+ * <p/>
+ * Once a task is created, scheduling and running it doesn't allocate.  Tasks may be scheduled
+ * and cancelled from any thread, they are always run on the looper of their scheduler.
+ */
+public class TimerScheduler {
+    private static final String BACKGROUND_THREAD_NAME = "ExoMedia_TimerScheduler_HandlerThread";
+    private static final long DEFAULT_COALESCING_WINDOW = 4;
+
+    private static TimerScheduler mainScheduler;
+    private static TimerScheduler backgroundScheduler;
+    //The schedulers hold their looper, so they are only weakly referenced to let the loopers of finished threads be collected
+    private static final Map<Looper, WeakReference<TimerScheduler>> looperSchedulers = new WeakHashMap<>();
+
+    private final Handler handler;
+    private final List<Task> tasks = new ArrayList<>();
+    private Task[] dueTasks = new Task[4];
+
+    private long coalescingWindow = DEFAULT_COALESCING_WINDOW;
+    private long wakeupTime = -1;
+    private int wakeupCount;
+
+    private final Runnable dispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    /**
+     * Creates a scheduler that runs its tasks on the looper.  Where possible the shared schedulers
+     * ({@link #getMainScheduler()}, {@link #getBackgroundScheduler()}, {@link #getCurrentThreadScheduler()}
+     * and {@link #getScheduler(Looper)}) should be used instead, so that the tasks are coalesced with the others.
+     *
+     * @param looper The looper to run the tasks on
+     */
+    public TimerScheduler(Looper looper) {
+        handler = new Handler(looper);
+    }
+
+    /**
+     * @return The scheduler shared by everything running on the main thread
+     */
+    public static synchronized TimerScheduler getMainScheduler() {
+        if (mainScheduler == null) {
+            mainScheduler = new TimerScheduler(Looper.getMainLooper());
+        }
+
+        return mainScheduler;
+    }
+
+    /**
+     * Retrieves the scheduler shared by everything running in the background.  Its thread is
+     * started the first time this is called and is kept for the life of the process, since an
+     * idle looper doesn't use any resources.
+     *
+     * @return The shared background scheduler
+     */
+    public static synchronized TimerScheduler getBackgroundScheduler() {
+        if (backgroundScheduler == null) {
+            HandlerThread handlerThread = new HandlerThread(BACKGROUND_THREAD_NAME);
+            handlerThread.start();
+            backgroundScheduler = getScheduler(handlerThread.getLooper());
+        }
+
+        return backgroundScheduler;
+    }
+
+    /**
+     * Retrieves the scheduler shared by everything running on the calling thread, which must
+     * have a looper
+     *
+     * @return The scheduler for the calling thread
+     */
+    public static TimerScheduler getCurrentThreadScheduler() {
+        Looper looper = Looper.myLooper();
+        if (looper == null) {
+            throw new IllegalStateException("The TimerScheduler can't be used on a thread that has not called Looper.prepare()");
+        }
+
+        return getScheduler(looper);
+    }
+
+    /**
+     * Retrieves the scheduler shared by everything running on the looper, creating it if needed
+     *
+     * @param looper The looper to run the tasks on
+     * @return The scheduler for the looper
+     */
+    public static TimerScheduler getScheduler(Looper looper) {
+        if (looper == Looper.getMainLooper()) {
+            return getMainScheduler();
+        }
+
+        synchronized (looperSchedulers) {
+            WeakReference<TimerScheduler> reference = looperSchedulers.get(looper);
+            TimerScheduler scheduler = reference != null ? reference.get() : null;
+            if (scheduler == null) {
+                scheduler = new TimerScheduler(looper);
+                looperSchedulers.put(looper, new WeakReference<>(scheduler));
+            }
+
+            return scheduler;
+        }
+    }
+
+    /**
+     * Creates a task that runs the runnable each time it is due once it is scheduled
+     *
+     * @param runnable The runnable to run
+     * @return The task, which isn't scheduled yet
+     */
+    public Task createTask(Runnable runnable) {
+        return new Task(runnable);
+    }
+
+    /**
+     * Sets how far ahead of their due time tasks are run when the looper wakes up for another task
+     *
+     * @param milliSeconds The coalescing window [default: {@value #DEFAULT_COALESCING_WINDOW}]
+     */
+    public synchronized void setCoalescingWindow(long milliSeconds) {
+        coalescingWindow = milliSeconds;
+    }
+
+    /**
+     * @return The number of times the scheduler woke up its looper
+     */
+    public synchronized int getWakeupCount() {
+        return wakeupCount;
+    }
+
+    /**
+     * Runs the tasks that are due and schedules the next wake up.  The tasks are run outside of
+     * the lock so that they can schedule and cancel tasks themselves.
+     */
+    private void dispatch() {
+        int dueCount = 0;
+        synchronized (this) {
+            wakeupTime = -1;
+            wakeupCount++;
+
+            long now = SystemClock.uptimeMillis();
+            for (int i = 0; i < tasks.size(); i++) {
+                Task task = tasks.get(i);
+                if (task.dueTime <= now + coalescingWindow) {
+                    //Like postDelayed after each run, the next run is timed from now
+                    task.dueTime = now + task.interval;
+
+                    if (dueCount == dueTasks.length) {
+                        Task[] grown = new Task[dueTasks.length * 2];
+                        System.arraycopy(dueTasks, 0, grown, 0, dueCount);
+                        dueTasks = grown;
+                    }
+
+                    dueTasks[dueCount++] = task;
+                }
+            }
+        }
+
+        for (int i = 0; i < dueCount; i++) {
+            Task task = dueTasks[i];
+            dueTasks[i] = null;
+
+            //The task may have been cancelled by one run before it
+            if (task.scheduled) {
+                task.runnable.run();
+            }
+        }
+
+        synchronized (this) {
+            scheduleWakeup();
+        }
+    }
+
+    /**
+     * Makes sure the looper wakes up in time for the task that is due first.  Each task may be
+     * run as late as its due time plus its slack, so the looper wakes up at the earliest of those;
+     * the other tasks that are due by then are run at the same time.
+     */
+    private void scheduleWakeup() {
+        long nextWakeup = Long.MAX_VALUE;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            nextWakeup = Math.min(nextWakeup, task.dueTime + task.slack);
+        }
+
+        if (nextWakeup == wakeupTime) {
+            return;
+        }
+
+        handler.removeCallbacks(dispatchRunnable);
+        wakeupTime = -1;
+
+        if (nextWakeup != Long.MAX_VALUE) {
+            wakeupTime = nextWakeup;
+            handler.postAtTime(dispatchRunnable, nextWakeup);
+        }
+    }
+
+    private synchronized void schedule(Task task) {
+        long now = SystemClock.uptimeMillis();
+        if (!task.scheduled) {
+            task.scheduled = true;
+            task.dueTime = now + task.interval;
+            tasks.add(task);
+        } else if (now + task.interval < task.dueTime) {
+            task.dueTime = now + task.interval;
+        }
+
+        scheduleWakeup();
+    }
+
+    private synchronized void cancel(Task task) {
+        if (!task.scheduled) {
+            return;
+        }
+
+        task.scheduled = false;
+        tasks.remove(task);
+        scheduleWakeup();
+    }
+
+    /**
+     * A periodic task of a {@link TimerScheduler}, see {@link #createTask(Runnable)}
+     */
+    public final class Task {
+        private final Runnable runnable;
+
+        private volatile boolean scheduled = false;
+        private long interval;
+        private long slack;
+        private long dueTime;
+
+        private Task(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        /**
+         * Schedules the task to run every interval, starting an interval from now.  If the task
+         * is already scheduled this doesn't change when it is next run.
+         */
+        public void schedule() {
+            TimerScheduler.this.schedule(this);
+        }
+
+        /**
+         * Stops running the task
+         */
+        public void cancel() {
+            TimerScheduler.this.cancel(this);
+        }
+
+        /**
+         * @return True if the task is scheduled
+         */
+        public boolean isScheduled() {
+            return scheduled;
+        }
+
+        /**
+         * Sets the time between runs of the task.  If the task is scheduled and the interval is
+         * shortened, the next run is moved up to match.
+         *
+         * @param milliSeconds The time between runs
+         */
+        public void setInterval(long milliSeconds) {
+            synchronized (TimerScheduler.this) {
+                interval = milliSeconds;
+                if (scheduled) {
+                    TimerScheduler.this.schedule(this);
+                }
+            }
+        }
+
+        /**
+         * Sets how late the task may be run so that it can be run together with other tasks
+         *
+         * @param milliSeconds The timer slack [default: 0]
+         */
+        public void setTimerSlack(long milliSeconds) {
+            synchronized (TimerScheduler.this) {
+                slack = milliSeconds;
+                if (scheduled) {
+                    scheduleWakeup();
+                }
+            }
+        }
+    }
+}
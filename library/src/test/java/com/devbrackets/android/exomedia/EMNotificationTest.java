@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link EMNotification.PostedState} that decides which notification updates are skipped.
+ * Bitmaps and PendingIntents can't be created outside of Android, so only the values are covered.
+ */
+public class EMNotificationTest {
+
+    @Test
+    public void nothingMatchesBeforeThePost() {
+        EMNotification.PostedState postedState = new EMNotification.PostedState();
+        assertFalse(postedState.matches(createInfo("Title", "Content", null)));
+        assertFalse(postedState.matches(new NotificationInfo()));
+    }
+
+    @Test
+    public void matchesThePostedInfo() {
+        EMNotification.PostedState postedState = new EMNotification.PostedState();
+        postedState.set(createInfo("Title", "Content", createMediaState(true, false, true)));
+
+        assertTrue(postedState.matches(createInfo("Title", "Content", createMediaState(true, false, true))));
+    }
+
+    @Test
+    public void changedTextDoesNotMatch() {
+        EMNotification.PostedState postedState = new EMNotification.PostedState();
+        postedState.set(createInfo("Title", "Content", null));
+
+        assertFalse(postedState.matches(createInfo("Other title", "Content", null)));
+        assertFalse(postedState.matches(createInfo("Title", "Other content", null)));
+    }
+
+    /**
+     * The info reports missing text as empty, so the two are the same notification
+     */
+    @Test
+    public void missingTextMatchesEmptyText() {
+        EMNotification.PostedState postedState = new EMNotification.PostedState();
+        postedState.set(new NotificationInfo());
+
+        assertTrue(postedState.matches(createInfo("", "", null)));
+    }
+
+    @Test
+    public void changedMediaStateDoesNotMatch() {
+        EMNotification.PostedState postedState = new EMNotification.PostedState();
+        postedState.set(createInfo("Title", "Content", createMediaState(true, true, true)));
+
+        assertFalse(postedState.matches(createInfo("Title", "Content", createMediaState(false, true, true))));
+        assertFalse(postedState.matches(createInfo("Title", "Content", createMediaState(true, false, true))));
+        assertFalse(postedState.matches(createInfo("Title", "Content", createMediaState(true, true, false))));
+        assertFalse(postedState.matches(createInfo("Title", "Content", null)));
+    }
+
+    /**
+     * A state with everything disabled is still shown differently than no state at all
+     */
+    @Test
+    public void addedMediaStateDoesNotMatch() {
+        EMNotification.PostedState postedState = new EMNotification.PostedState();
+        postedState.set(createInfo("Title", "Content", null));
+
+        assertFalse(postedState.matches(createInfo("Title", "Content", createMediaState(false, false, false))));
+    }
+
+    @Test
+    public void nothingMatchesAfterTheClear() {
+        EMNotification.PostedState postedState = new EMNotification.PostedState();
+        NotificationInfo info = createInfo("Title", "Content", createMediaState(true, true, true));
+        postedState.set(info);
+        postedState.clear();
+
+        assertFalse(postedState.matches(info));
+    }
+
+    private static NotificationInfo createInfo(String title, String content, EMNotification.NotificationMediaState mediaState) {
+        NotificationInfo info = new NotificationInfo();
+        info.setTitle(title);
+        info.setContent(content);
+        info.setMediaState(mediaState);
+        return info;
+    }
+
+    private static EMNotification.NotificationMediaState createMediaState(boolean playing, boolean previousEnabled, boolean nextEnabled) {
+        EMNotification.NotificationMediaState mediaState = new EMNotification.NotificationMediaState();
+        mediaState.setPlaying(playing);
+        mediaState.setPreviousEnabled(previousEnabled);
+        mediaState.setNextEnabled(nextEnabled);
+        return mediaState;
+    }
+}
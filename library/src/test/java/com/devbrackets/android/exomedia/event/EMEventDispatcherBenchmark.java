@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.event;
+
+import com.squareup.otto.Bus;
+import com.squareup.otto.Subscribe;
+import com.squareup.otto.ThreadEnforcer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times posting the {@link EMMediaProgressEvent} at steady state through the Otto {@link Bus}
+ * and through the {@link EMEventDispatcher.Channel} that replaced it, each with a single
+ * subscriber.  The same event is re-used for every post, as the progress poll does.  The
+ * timings are printed, not asserted, since they depend on the machine running the tests.
+ */
+public class EMEventDispatcherBenchmark {
+    private static final int WARMUP_POSTS = 200000;
+    private static final int MEASURED_POSTS = 1000000;
+
+    @Test
+    public void compareProgressPostWithOtto() {
+        //The players post on the main thread, which doesn't exist here
+        Bus bus = new Bus(ThreadEnforcer.ANY);
+        OttoSubscriber ottoSubscriber = new OttoSubscriber();
+        bus.register(ottoSubscriber);
+
+        EMEventDispatcher dispatcher = new EMEventDispatcher();
+        ChannelSubscriber channelSubscriber = new ChannelSubscriber();
+        EMEventDispatcher.Channel<EMMediaProgressEvent> channel = dispatcher.getChannel(EMMediaProgressEvent.class);
+        channel.subscribe(channelSubscriber);
+
+        EMMediaProgressEvent event = new EMMediaProgressEvent(0, 0, 60000);
+        long busNanos = timeBus(bus, event);
+        long channelNanos = timeChannel(channel, event);
+
+        assertEquals(WARMUP_POSTS + MEASURED_POSTS, ottoSubscriber.positionSum);
+        assertEquals(ottoSubscriber.positionSum, channelSubscriber.positionSum);
+        System.out.println(String.format("EMMediaProgressEvent post: Bus %d ns/op, Channel %d ns/op",
+                busNanos / MEASURED_POSTS, channelNanos / MEASURED_POSTS));
+    }
+
+    /**
+     * @return The total nanoseconds of the measured posts
+     */
+    private static long timeBus(Bus bus, EMMediaProgressEvent event) {
+        for (int i = 0; i < WARMUP_POSTS; i++) {
+            event.update(1, 0, 60000);
+            bus.post(event);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_POSTS; i++) {
+            event.update(1, 0, 60000);
+            bus.post(event);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return The total nanoseconds of the measured posts
+     */
+    private static long timeChannel(EMEventDispatcher.Channel<EMMediaProgressEvent> channel, EMMediaProgressEvent event) {
+        for (int i = 0; i < WARMUP_POSTS; i++) {
+            event.update(1, 0, 60000);
+            channel.post(event);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_POSTS; i++) {
+            event.update(1, 0, 60000);
+            channel.post(event);
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static class OttoSubscriber {
+        private long positionSum;
+
+        @Subscribe
+        public void onProgressUpdated(EMMediaProgressEvent event) {
+            positionSum += event.getPosition();
+        }
+    }
+
+    private static class ChannelSubscriber implements EMEventDispatcher.Subscriber<EMMediaProgressEvent> {
+        private long positionSum;
+
+        @Override
+        public void onEvent(EMMediaProgressEvent event) {
+            positionSum += event.getPosition();
+        }
+    }
+}
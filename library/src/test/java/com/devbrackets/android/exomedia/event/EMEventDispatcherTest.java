@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.event;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EMEventDispatcherTest {
+
+    @Test
+    public void subscribersReceivePostedEvents() {
+        EMEventDispatcher dispatcher = new EMEventDispatcher();
+        RecordingSubscriber<String> first = new RecordingSubscriber<>();
+        RecordingSubscriber<String> second = new RecordingSubscriber<>();
+        dispatcher.subscribe(String.class, first);
+        dispatcher.subscribe(String.class, second);
+
+        dispatcher.post("one");
+        dispatcher.post("two");
+
+        assertEquals(2, first.events.size());
+        assertEquals("two", first.events.get(1));
+        assertEquals(first.events, second.events);
+    }
+
+    @Test
+    public void eventsOnlyReachTheirOwnChannel() {
+        EMEventDispatcher dispatcher = new EMEventDispatcher();
+        RecordingSubscriber<String> strings = new RecordingSubscriber<>();
+        RecordingSubscriber<Integer> integers = new RecordingSubscriber<>();
+        dispatcher.subscribe(String.class, strings);
+        dispatcher.subscribe(Integer.class, integers);
+
+        dispatcher.post(1);
+
+        assertTrue(strings.events.isEmpty());
+        assertEquals(1, integers.events.size());
+        assertSame(dispatcher.getChannel(Integer.class), dispatcher.getChannel(Integer.class));
+    }
+
+    @Test
+    public void unsubscribedSubscribersAreNotInformed() {
+        EMEventDispatcher dispatcher = new EMEventDispatcher();
+        RecordingSubscriber<String> first = new RecordingSubscriber<>();
+        RecordingSubscriber<String> middle = new RecordingSubscriber<>();
+        RecordingSubscriber<String> last = new RecordingSubscriber<>();
+        dispatcher.subscribe(String.class, first);
+        dispatcher.subscribe(String.class, middle);
+        dispatcher.subscribe(String.class, last);
+
+        dispatcher.unsubscribe(String.class, middle);
+        dispatcher.post("one");
+
+        assertEquals(1, first.events.size());
+        assertTrue(middle.events.isEmpty());
+        assertEquals(1, last.events.size());
+
+        dispatcher.unsubscribe(String.class, first);
+        dispatcher.unsubscribe(String.class, last);
+        assertFalse(dispatcher.getChannel(String.class).hasSubscribers());
+
+        //Unsubscribing twice does nothing
+        dispatcher.unsubscribe(String.class, last);
+        assertFalse(dispatcher.getChannel(String.class).hasSubscribers());
+    }
+
+    @Test
+    public void newSubscribersReceiveTheLatestEvent() {
+        EMEventDispatcher dispatcher = new EMEventDispatcher();
+        dispatcher.post("one");
+        dispatcher.post("two");
+
+        RecordingSubscriber<String> subscriber = new RecordingSubscriber<>();
+        dispatcher.subscribe(String.class, subscriber);
+
+        assertEquals(1, subscriber.events.size());
+        assertEquals("two", subscriber.events.get(0));
+    }
+
+    @Test
+    public void clearedEventsAreNotReplayed() {
+        EMEventDispatcher dispatcher = new EMEventDispatcher();
+        dispatcher.post("one");
+        dispatcher.post(new EMMediaProgressEvent(1000, 10, 60000));
+        dispatcher.getChannel(String.class).clearLatest();
+        dispatcher.getChannel(EMMediaProgressEvent.class).clearLatest();
+
+        RecordingSubscriber<String> strings = new RecordingSubscriber<>();
+        RecordingSubscriber<EMMediaProgressEvent> progress = new RecordingSubscriber<>();
+        dispatcher.subscribe(String.class, strings);
+        dispatcher.subscribe(EMMediaProgressEvent.class, progress);
+
+        assertTrue(strings.events.isEmpty());
+        assertTrue(progress.events.isEmpty());
+        assertNull(dispatcher.getChannel(EMMediaProgressEvent.class).getLatest());
+    }
+
+    @Test
+    public void replayedProgressIsACopyOfThePostedValues() {
+        EMEventDispatcher dispatcher = new EMEventDispatcher();
+        EMMediaProgressEvent reused = new EMMediaProgressEvent(1000, 10, 60000);
+        dispatcher.post(reused);
+
+        //The players update the same event for the next poll
+        reused.update(2000, 20, 60000);
+
+        RecordingSubscriber<EMMediaProgressEvent> subscriber = new RecordingSubscriber<>();
+        dispatcher.subscribe(EMMediaProgressEvent.class, subscriber);
+
+        assertEquals(1, subscriber.events.size());
+        EMMediaProgressEvent replayed = subscriber.events.get(0);
+        assertNotSame(reused, replayed);
+        assertEquals(1000, replayed.getPosition());
+        assertEquals(10, replayed.getBufferPercent());
+        assertEquals(60000, replayed.getDuration());
+
+        //Later posts don't change the replayed copy
+        dispatcher.post(reused);
+        assertEquals(1000, replayed.getPosition());
+        assertEquals(2000, dispatcher.getChannel(EMMediaProgressEvent.class).getLatest().getPosition());
+    }
+
+    @Test
+    public void liveProgressIsThePostedEvent() {
+        EMEventDispatcher dispatcher = new EMEventDispatcher();
+        RecordingSubscriber<EMMediaProgressEvent> subscriber = new RecordingSubscriber<>();
+        dispatcher.subscribe(EMMediaProgressEvent.class, subscriber);
+
+        EMMediaProgressEvent reused = new EMMediaProgressEvent(1000, 10, 60000);
+        dispatcher.post(reused);
+
+        assertEquals(1, subscriber.events.size());
+        assertSame(reused, subscriber.events.get(0));
+    }
+
+    private static class RecordingSubscriber<T> implements EMEventDispatcher.Subscriber<T> {
+        private final List<T> events = new ArrayList<>();
+
+        @Override
+        public void onEvent(T event) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.util;
+
+import com.google.android.exoplayer.ExoPlaybackException;
+import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ErrorClassifierTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    @Test
+    public void responseCodes() {
+        assertEquals(ErrorClassifier.ErrorType.EXPIRED_URL, ErrorClassifier.classifyResponseCode(403));
+        assertEquals(ErrorClassifier.ErrorType.EXPIRED_URL, ErrorClassifier.classifyResponseCode(410));
+
+        assertEquals(ErrorClassifier.ErrorType.TRANSIENT, ErrorClassifier.classifyResponseCode(408));
+        assertEquals(ErrorClassifier.ErrorType.TRANSIENT, ErrorClassifier.classifyResponseCode(429));
+        assertEquals(ErrorClassifier.ErrorType.TRANSIENT, ErrorClassifier.classifyResponseCode(500));
+        assertEquals(ErrorClassifier.ErrorType.TRANSIENT, ErrorClassifier.classifyResponseCode(503));
+
+        assertEquals(ErrorClassifier.ErrorType.FATAL, ErrorClassifier.classifyResponseCode(400));
+        assertEquals(ErrorClassifier.ErrorType.FATAL, ErrorClassifier.classifyResponseCode(404));
+    }
+
+    @Test
+    public void missingErrorsAreTransient() {
+        assertEquals(ErrorClassifier.ErrorType.TRANSIENT, ErrorClassifier.classify(null));
+    }
+
+    @Test
+    public void wrappedResponseCodesAreFound() {
+        IOException expired = new HttpDataSource.InvalidResponseCodeException(403, NO_HEADERS, null);
+        assertEquals(ErrorClassifier.ErrorType.EXPIRED_URL, ErrorClassifier.classify(new ExoPlaybackException(expired)));
+
+        IOException unavailable = new HttpDataSource.InvalidResponseCodeException(503, NO_HEADERS, null);
+        assertEquals(ErrorClassifier.ErrorType.TRANSIENT, ErrorClassifier.classify(new ExoPlaybackException(new IOException(unavailable))));
+    }
+
+    /**
+     * The response code is more specific than the generic IOException wrapping it
+     */
+    @Test
+    public void responseCodesWinOverGenericFailures() {
+        IOException notFound = new HttpDataSource.InvalidResponseCodeException(404, NO_HEADERS, null);
+        assertEquals(ErrorClassifier.ErrorType.FATAL, ErrorClassifier.classify(new IOException("Load failed", notFound)));
+    }
+
+    @Test
+    public void unplayableMediaIsFatal() {
+        assertEquals(ErrorClassifier.ErrorType.FATAL, ErrorClassifier.classify(new ExoPlaybackException(new ParserException("Bad header"))));
+        assertEquals(ErrorClassifier.ErrorType.FATAL,
+                ErrorClassifier.classify(new IOException(new HttpDataSource.InvalidContentTypeException("text/html", null))));
+    }
+
+    @Test
+    public void otherIOErrorsAreTransient() {
+        assertEquals(ErrorClassifier.ErrorType.TRANSIENT, ErrorClassifier.classify(new ExoPlaybackException(new IOException("Connection reset"))));
+    }
+
+    @Test
+    public void otherErrorsAreFatal() {
+        assertEquals(ErrorClassifier.ErrorType.FATAL, ErrorClassifier.classify(new ExoPlaybackException("Decoder init failed")));
+        assertEquals(ErrorClassifier.ErrorType.FATAL, ErrorClassifier.classify(new IllegalStateException()));
+    }
+
+    @Test
+    public void causeCyclesEnd() {
+        CyclicException error = new CyclicException();
+        assertEquals(ErrorClassifier.ErrorType.TRANSIENT, ErrorClassifier.classify(error));
+    }
+
+    /**
+     * An IOException that is its own cause's cause, which the classifier has to stop following
+     */
+    private static class CyclicException extends IOException {
+        private final IOException cause = new IOException() {
+            @Override
+            public synchronized Throwable getCause() {
+                return CyclicException.this;
+            }
+        };
+
+        @Override
+        public synchronized Throwable getCause() {
+            return cause;
+        }
+    }
+}
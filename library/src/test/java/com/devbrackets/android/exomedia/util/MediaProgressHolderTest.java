@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 Brian Wernick
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.devbrackets.android.exomedia.util;
+
+import com.devbrackets.android.exomedia.event.EMEventDispatcher;
+import com.devbrackets.android.exomedia.event.EMMediaProgressEvent;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MediaProgressHolderTest {
+    private static final int PUBLISH_COUNT = 200000;
+    private static final int READER_COUNT = 3;
+    private static final int ALLOCATION_RUN_COUNT = 100000;
+
+    @Test
+    public void readsNothingBeforeThePublish() {
+        MediaProgressHolder holder = new MediaProgressHolder();
+        EMMediaProgressEvent event = new EMMediaProgressEvent(5, 6, 7);
+
+        assertFalse(holder.read(event));
+        assertEquals(5, event.getPosition());
+        assertNull(holder.getSnapshot());
+    }
+
+    @Test
+    public void readsThePublishedProgress() {
+        MediaProgressHolder holder = new MediaProgressHolder();
+        long sequence = holder.getSequence();
+        holder.publish(new EMMediaProgressEvent(1000, 10, 60000));
+
+        EMMediaProgressEvent event = new EMMediaProgressEvent(0, 0, 0);
+        assertTrue(holder.read(event));
+        assertEquals(1000, event.getPosition());
+        assertEquals(10, event.getBufferPercent());
+        assertEquals(60000, event.getDuration());
+        assertNotEquals(sequence, holder.getSequence());
+    }
+
+    @Test
+    public void clearForgetsThePublishedProgress() {
+        MediaProgressHolder holder = new MediaProgressHolder();
+        holder.publish(1000, 10, 60000);
+        holder.clear();
+
+        assertFalse(holder.read(new EMMediaProgressEvent(0, 0, 0)));
+        assertEquals(0, holder.getPosition());
+    }
+
+    /**
+     * Every publish writes the same value to all three fields, so a reader that sees
+     * different values has read a torn snapshot
+     */
+    @Test
+    public void concurrentReadsAreConsistent() throws InterruptedException {
+        final MediaProgressHolder holder = new MediaProgressHolder();
+        final AtomicBoolean publishing = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final CountDownLatch started = new CountDownLatch(READER_COUNT);
+
+        Thread[] readers = new Thread[READER_COUNT];
+        for (int i = 0; i < READER_COUNT; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    EMMediaProgressEvent event = new EMMediaProgressEvent(0, 0, 0);
+                    long lastPosition = 0;
+                    started.countDown();
+
+                    while (publishing.get() && failure.get() == null) {
+                        if (!holder.read(event)) {
+                            continue;
+                        }
+
+                        long position = event.getPosition();
+                        if (event.getDuration() != position || event.getBufferPercent() != (int) (position % 100)) {
+                            failure.set("Torn read: " + position + ", " + event.getBufferPercent() + ", " + event.getDuration());
+                        } else if (position < lastPosition) {
+                            failure.set("Read " + position + " after " + lastPosition);
+                        }
+
+                        lastPosition = position;
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        started.await();
+        for (int i = 1; i <= PUBLISH_COUNT; i++) {
+            holder.publish(i, i % 100, i);
+        }
+
+        publishing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get(), failure.get());
+    }
+
+    @Test
+    public void readDoesNotAllocate() {
+        final MediaProgressHolder holder = new MediaProgressHolder();
+        holder.publish(1000, 10, 60000);
+        final EMMediaProgressEvent event = new EMMediaProgressEvent(0, 0, 0);
+
+        assertDoesNotAllocate("read", new Runnable() {
+            @Override
+            public void run() {
+                holder.read(event);
+            }
+        });
+    }
+
+    @Test
+    public void publishDoesNotAllocate() {
+        final MediaProgressHolder holder = new MediaProgressHolder();
+        final EMMediaProgressEvent event = new EMMediaProgressEvent(1000, 10, 60000);
+
+        assertDoesNotAllocate("publish", new Runnable() {
+            @Override
+            public void run() {
+                holder.publish(event);
+            }
+        });
+    }
+
+    /**
+     * The dispatcher retains the progress in a holder, so posting it doesn't allocate either
+     */
+    @Test
+    public void progressPostDoesNotAllocate() {
+        EMEventDispatcher dispatcher = new EMEventDispatcher();
+        final EMEventDispatcher.Channel<EMMediaProgressEvent> channel = dispatcher.getChannel(EMMediaProgressEvent.class);
+        channel.subscribe(new EMEventDispatcher.Subscriber<EMMediaProgressEvent>() {
+            @Override
+            public void onEvent(EMMediaProgressEvent event) {
+                //Purposefully left blank
+            }
+        });
+        final EMMediaProgressEvent event = new EMMediaProgressEvent(1000, 10, 60000);
+
+        assertDoesNotAllocate("Channel.post", new Runnable() {
+            @Override
+            public void run() {
+                channel.post(event);
+            }
+        });
+    }
+
+    /**
+     * Runs the action repeatedly and asserts that the current thread didn't allocate while doing
+     * so.  The test is skipped on JVMs that can't measure the allocations of a thread.
+     */
+    private static void assertDoesNotAllocate(String name, Runnable action) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled());
+
+        //Warms up the action so that the measurement doesn't include class loading or compilation
+        for (int i = 0; i < ALLOCATION_RUN_COUNT; i++) {
+            action.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ALLOCATION_RUN_COUNT; i++) {
+            action.run();
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        //A single allocation per run would be over a megabyte, this leaves room for the measurement itself
+        assertTrue(name + " allocated " + allocated + " bytes", allocated < 1024);
+    }
+}